@@ -140,6 +140,16 @@ public class AXmlResourceParser implements XmlResourceParser {
 		return m_strings.getString(m_name);
 	}
 	
+	/**
+	 * Checks the name of the current tag without materializing it.
+	 */
+	public boolean isName(String name) {
+		if (m_name==-1 || (m_event!=START_TAG && m_event!=END_TAG)) {
+			return false;
+		}
+		return m_strings.equals(m_name,name);
+	}
+	
 	public String getText() {
 		if (m_name==-1 || m_event!=TEXT) {
 			return null;
@@ -260,6 +270,18 @@ public class AXmlResourceParser implements XmlResourceParser {
 		}
 		return m_strings.getString(name);
 	}
+	
+	/**
+	 * Checks the name of the attribute at specified index without materializing it.
+	 */
+	public boolean isAttributeName(int index,String attributeName) {
+		int offset=getAttributeOffset(index);
+		int name=m_attributes[offset+ATTRIBUTE_IX_NAME];
+		if (name==-1) {
+			return attributeName.length()==0;
+		}
+		return m_strings.equals(name,attributeName);
+	}
 
 	public int getAttributeNameResource(int index) {
 		int offset=getAttributeOffset(index);
@@ -738,7 +760,7 @@ public class AXmlResourceParser implements XmlResourceParser {
 		int uri=(namespace!=null)?
 			m_strings.find(namespace):
 			-1;
-		for (int o=0;o!=m_attributes.length;++o) {
+		for (int o=0;o!=m_attributes.length;o+=ATTRIBUTE_LENGHT) {
 			if (name==m_attributes[o+ATTRIBUTE_IX_NAME] &&
 				(uri==-1 || uri==m_attributes[o+ATTRIBUTE_IX_NAMESPACE_URI])) 
 			{
@@ -16,6 +16,9 @@
 package android.content.res;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Dmitry Skiba
@@ -37,12 +40,14 @@ public class StringBlock {
 		int chunkSize=reader.readInt();
 		int stringCount=reader.readInt();
 		int styleOffsetCount=reader.readInt();
-		/*?*/reader.readInt();
+		int flags=reader.readInt();
 		int stringsOffset=reader.readInt();
 		int stylesOffset=reader.readInt();
 		
 		StringBlock block=new StringBlock();
+		block.m_isUTF8=(flags & UTF8_FLAG)!=0;
 		block.m_stringOffsets=reader.readIntArray(stringCount);
+		block.m_cache=new String[stringCount];
 		if (styleOffsetCount!=0) {
 			block.m_styleOffsets=reader.readIntArray(styleOffsetCount);
 		}
@@ -75,6 +80,7 @@ public class StringBlock {
 	
 	/**
 	 * Returns raw string (without any styling information) at specified index.
+	 * Every string is decoded at most once.
 	 */
 	public String getString(int index) {
 		if (index<0 ||
@@ -83,14 +89,69 @@ public class StringBlock {
 		{
 			return null;
 		}
+		String result=m_cache[index];
+		if (result==null) {
+			result=m_isUTF8?decodeUTF8(index):decodeUTF16(index);
+			m_cache[index]=result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Checks whether the string at specified index equals the given string.
+	 * Compares against the raw pool entry, i.e. does not decode the string
+	 * unless it contains non-ASCII characters in a UTF-8 pool.
+	 */
+	public boolean equals(int index,String string) {
+		if (string==null ||
+			index<0 ||
+			m_stringOffsets==null ||
+			index>=m_stringOffsets.length)
+		{
+			return false;
+		}
+		if (m_cache[index]!=null) {
+			return m_cache[index].equals(string);
+		}
 		int offset=m_stringOffsets[index];
+		if (m_isUTF8) {
+			offset+=((getByte(m_strings,offset) & 0x80)!=0)?2:1;
+			int length=getByte(m_strings,offset);
+			offset+=1;
+			if ((length & 0x80)!=0) {
+				length=((length & 0x7F)<<8) | getByte(m_strings,offset);
+				offset+=1;
+			}
+			if (length!=string.length()) {
+				// different number of bytes, but possibly same string if not ASCII
+				return length>string.length() && getString(index).equals(string);
+			}
+			for (int j=0;j!=length;++j) {
+				int b=getByte(m_strings,offset+j);
+				if (b>=0x80) {
+					return getString(index).equals(string);
+				}
+				if (b!=string.charAt(j)) {
+					return false;
+				}
+			}
+			return true;
+		}
 		int length=getShort(m_strings,offset);
-		StringBuilder result=new StringBuilder(length);
-		for (;length!=0;length-=1) {
+		if ((length & 0x8000)!=0) {
+			offset+=2;
+			length=((length & 0x7FFF)<<16) | getShort(m_strings,offset);
+		}
+		if (length!=string.length()) {
+			return false;
+		}
+		for (int j=0;j!=length;++j) {
 			offset+=2;
-			result.append((char)getShort(m_strings,offset));
+			if (string.charAt(j)!=getShort(m_strings,offset)) {
+				return false;
+			}
 		}
-		return result.toString();
+		return true;
 	}
 	
 	/**
@@ -162,27 +223,21 @@ public class StringBlock {
 	 * Returns -1 if the string was not found.
 	 */
 	public int find(String string) {
-		if (string==null) {
+		if (string==null || m_stringOffsets==null) {
 			return -1;
 		}
-		for (int i=0;i!=m_stringOffsets.length;++i) {
-			int offset=m_stringOffsets[i];
-			int length=getShort(m_strings,offset);
-			if (length!=string.length()) {
-				continue;
-			}
-			int j=0;
-			for (;j!=length;++j) {
-				offset+=2;
-				if (string.charAt(j)!=getShort(m_strings,offset)) {
+		Integer index=m_indices.get(string);
+		if (index==null) {
+			index=-1;
+			for (int i=0;i!=m_stringOffsets.length;++i) {
+				if (equals(i,string)) {
+					index=i;
 					break;
 				}
 			}
-			if (j==length) {
-				return i;
-			}
+			m_indices.put(string,index);
 		}
-		return -1;
+		return index;
 	}
 	
 	///////////////////////////////////////////// implementation
@@ -227,6 +282,43 @@ public class StringBlock {
 		return style;
 	}
 	
+	private String decodeUTF16(int index) {
+		int offset=m_stringOffsets[index];
+		int length=getShort(m_strings,offset);
+		if ((length & 0x8000)!=0) {
+			offset+=2;
+			length=((length & 0x7FFF)<<16) | getShort(m_strings,offset);
+		}
+		char[] result=new char[length];
+		for (int i=0;i!=length;++i) {
+			offset+=2;
+			result[i]=(char)getShort(m_strings,offset);
+		}
+		return new String(result);
+	}
+	
+	private String decodeUTF8(int index) {
+		int offset=m_stringOffsets[index];
+		// skip length in characters, followed by length in bytes (1 or 2 bytes each)
+		offset+=((getByte(m_strings,offset) & 0x80)!=0)?2:1;
+		int length=getByte(m_strings,offset);
+		offset+=1;
+		if ((length & 0x80)!=0) {
+			length=((length & 0x7F)<<8) | getByte(m_strings,offset);
+			offset+=1;
+		}
+		byte[] result=new byte[length];
+		for (int i=0;i!=length;++i) {
+			result[i]=(byte)getByte(m_strings,offset+i);
+		}
+		return new String(result,StandardCharsets.UTF_8);
+	}
+	
+	private static final int getByte(int[] array,int offset) {
+		int value=array[offset/4];
+		return (value >>> ((offset%4)*8)) & 0xFF;
+	}
+	
 	private static final int getShort(int[] array,int offset) {
 		int value=array[offset/4];
 		if ((offset%4)/2==0) {
@@ -240,6 +332,10 @@ public class StringBlock {
 	private int[] m_strings;
 	private int[] m_styleOffsets;
 	private int[] m_styles;
+	private boolean m_isUTF8;
+	private String[] m_cache;
+	private final Map<String,Integer> m_indices=new HashMap<String,Integer>();
 
 	private static final int CHUNK_TYPE=0x001C0001;
+	private static final int UTF8_FLAG=1<<8;
 }
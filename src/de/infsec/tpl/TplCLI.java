@@ -15,10 +15,12 @@
 package de.infsec.tpl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.config.LibScoutConfig;
 import de.infsec.tpl.modules.libapi.LibraryApiAnalysis;
 import de.infsec.tpl.modules.libmatch.LibraryIdentifier;
@@ -26,6 +28,7 @@ import de.infsec.tpl.modules.libprofiler.LibraryProfiler;
 import de.infsec.tpl.modules.updatability.LibraryUpdatability;
 import de.infsec.tpl.profile.Profile;
 import de.infsec.tpl.stats.AppStats;
+import de.infsec.tpl.stats.NdjsonWriter;
 import org.apache.commons.cli.BasicParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -102,6 +105,8 @@ public class TplCLI {
 
 		List<LibProfile> profiles = null;
 		LibraryUpdatability libUp = null;
+		NdjsonWriter jsonSink = null;
+		AnalysisContext ctx = null;
 
 		try {
 			// parse LibScout.toml (args from CLI take precedence)
@@ -114,15 +119,26 @@ public class TplCLI {
 			initLogging();
 			LibScoutConfig.whoAmI();
 
+			// immutable snapshot of the parsed settings that is passed to the analysis modules
+			ctx = AnalysisContext.fromConfig();
+
+			// updatability requires the library usage analysis
+			if (ctx.opUpdatability())
+				ctx = ctx.toBuilder().runLibUsageAnalysis(true).build();
+
 			/*
 			 * one time data loading
 			 */
 
-			if (LibScoutConfig.opMatch() || LibScoutConfig.opUpdatability())
-				profiles = Profile.loadLibraryProfiles(LibScoutConfig.profilesDir);
+			// profiles are not needed to check the updatability of stored app results
+			if (ctx.opMatch() || (ctx.opUpdatability() && !inputFiles.stream().allMatch(LibraryUpdatability::isStoredResultsFile)))
+				profiles = Profile.loadLibraryProfiles(ctx.profilesDir);
+
+			if (ctx.opUpdatability())
+				libUp = new LibraryUpdatability(ctx);
 
-			if (LibScoutConfig.opUpdatability())
-				libUp = new LibraryUpdatability(LibScoutConfig.libApiCompatDir);
+			if ((ctx.opMatch() || ctx.opUpdatability()) && ctx.generateJSON && ctx.ndjson)
+				jsonSink = new NdjsonWriter(ctx.jsonDir, "appStats", ctx.ndjsonMaxRecords, ctx.ndjsonCompress);
 
 		} catch (ParseException e) {
 			logger.error("Error: " + e.getMessage());
@@ -137,24 +153,37 @@ public class TplCLI {
 		// process input files, either library files or apps
 		for (File inputFile: inputFiles) {
 			try {
-				if (LibScoutConfig.opMatch()) {
-					LibraryIdentifier.run(inputFile, profiles, LibScoutConfig.runLibUsageAnalysis);
+				if (ctx.opMatch()) {
+					LibraryIdentifier.run(ctx, inputFile, profiles, jsonSink);
 
-				} else if (LibScoutConfig.opUpdatability()) {
-					AppStats stats = LibraryIdentifier.run(inputFile, profiles, true);
-					libUp.checkUpdatability(stats);
+				} else if (ctx.opUpdatability()) {
+					if (LibraryUpdatability.isStoredResultsFile(inputFile)) {
+						libUp.checkUpdatability(inputFile);
+					} else {
+						AppStats stats = LibraryIdentifier.run(ctx, inputFile, profiles, jsonSink);
+						libUp.checkUpdatability(stats);
+					}
 
-				} else if (LibScoutConfig.opProfile()) {
-					LibraryProfiler.extractFingerPrints(inputFile, libraryDescription);
+				} else if (ctx.opProfile()) {
+					LibraryProfiler.extractFingerPrints(ctx, inputFile, libraryDescription);
 
-				} else if (LibScoutConfig.opLibApiAnalysis()) {
-					LibraryApiAnalysis.run(inputFile);
+				} else if (ctx.opLibApiAnalysis()) {
+					LibraryApiAnalysis.run(ctx, inputFile);
 				}
 			} catch (Throwable t) {
 				logger.error("[FATAL " + (t instanceof Exception? "EXCEPTION" : "ERROR") + "] analysis aborted: " + t.getMessage());
 				logger.error(Utils.stacktrace2Str(t));
 			}
 		}
+
+		// flush pending json records
+		if (jsonSink != null) {
+			try {
+				jsonSink.close();
+			} catch (IOException e) {
+				logger.error("Could not write ndjson results: " + Utils.stacktrace2Str(e));
+			}
+		}
 	}
 
 
@@ -301,7 +330,11 @@ public class TplCLI {
 					throw new ParseException("You have to provide at least one directory that includes a library package and description");
 				}
 			} else {
-				String[] fileExts = LibScoutConfig.opMatch() || LibScoutConfig.opUpdatability() ? new String[]{"apk"} : new String[]{"jar", "aar"};
+				// updatability can also be checked for stored app results (ndjson[.gz], json files only if passed explicitly
+				// since input directories may contain arbitrary other json files)
+				String[] fileExts = LibScoutConfig.opMatch() ? new String[]{"apk"} :
+				                    LibScoutConfig.opUpdatability() ? new String[]{"apk", "ndjson", "ndjson.gz"} : new String[]{"jar", "aar"};
+				String[] argFileExts = LibScoutConfig.opUpdatability() ? new String[]{"apk", "json", "ndjson", "ndjson.gz"} : fileExts;
 
 				for (String inputFile : cmd.getArgs()) {
 					File arg = new File(inputFile);
@@ -309,12 +342,10 @@ public class TplCLI {
 					if (arg.isDirectory()) {
 						inputFiles.addAll(Utils.collectFiles(arg, fileExts));
 					} else if (arg.isFile()) {
-						if (arg.getName().endsWith("." + fileExts[0]))
-							inputFiles.add(arg);
-						else if (fileExts.length > 1 && arg.getName().endsWith("." + fileExts[1]))
+						if (Arrays.stream(argFileExts).anyMatch(ext -> arg.getName().endsWith("." + ext)))
 							inputFiles.add(arg);
 						else
-							throw new ParseException("File " + arg.getName() + " is no valid ." + Utils.join(Arrays.asList(fileExts), "/") + " file");
+							throw new ParseException("File " + arg.getName() + " is no valid ." + Utils.join(Arrays.asList(argFileExts), "/") + " file");
 					} else {
 						throw new ParseException("Argument " + inputFile + " is no valid file or directory!");
 					}
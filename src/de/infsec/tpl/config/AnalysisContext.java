@@ -0,0 +1,217 @@
+package de.infsec.tpl.config;
+
+import java.io.File;
+
+
+/**
+ * Immutable per-run analysis settings.
+ *
+ * {@link LibScoutConfig} remains the target for CLI / config file parsing, the analysis modules
+ * exclusively read their settings from an AnalysisContext that is passed in. Contexts are either
+ * created from the parsed config ({@link #fromConfig()}) or via a {@link Builder}, modified copies
+ * are derived via {@link #toBuilder()}. This allows differently configured analyses (e.g. full-match-only
+ * and partial matching) to run side by side in one JVM.
+ */
+public final class AnalysisContext {
+    public final LibScoutConfig.OpMode opmode;
+
+    public final File pathToAndroidJar;
+
+    public final boolean noPartialMatching;
+    public final boolean runLibUsageAnalysis;
+    public final boolean genVerboseProfiles;
+    public final boolean libDependencyAnalysis;
+
+    public final File logDir;
+
+    public final boolean generateStats;
+    public final File statsDir;
+
+    public final boolean generateJSON;
+    public final File jsonDir;
+    public final boolean ndjson;  // write json results as (rolling) newline-delimited json files
+    public final int ndjsonMaxRecords;
+    public final boolean ndjsonCompress;
+
+    public final boolean showComments;  // include library comments in reports
+    public final boolean asciiRendering;  // render package trees with ascii instead of unicode box-drawing characters
+
+    public final File profilesDir;
+    public final File libApiCompatDir;
+
+    public final boolean serialHashing;  // hash the classes on a single thread, e.g. to compare the hashing time
+
+    public final int libApiThreads;
+    public final File libApiCacheDir;
+
+    public final File dexResultsDir;
+    public final boolean dexContentDigest;
+
+
+    private AnalysisContext(Builder b) {
+        this.opmode = b.opmode;
+        this.pathToAndroidJar = b.pathToAndroidJar;
+        this.noPartialMatching = b.noPartialMatching;
+        this.runLibUsageAnalysis = b.runLibUsageAnalysis;
+        this.genVerboseProfiles = b.genVerboseProfiles;
+        this.libDependencyAnalysis = b.libDependencyAnalysis;
+        this.logDir = b.logDir;
+        this.generateStats = b.generateStats;
+        this.statsDir = b.statsDir;
+        this.generateJSON = b.generateJSON;
+        this.jsonDir = b.jsonDir;
+        this.ndjson = b.ndjson;
+        this.ndjsonMaxRecords = b.ndjsonMaxRecords;
+        this.ndjsonCompress = b.ndjsonCompress;
+        this.showComments = b.showComments;
+        this.asciiRendering = b.asciiRendering;
+        this.profilesDir = b.profilesDir;
+        this.libApiCompatDir = b.libApiCompatDir;
+        this.serialHashing = b.serialHashing;
+        this.libApiThreads = b.libApiThreads;
+        this.libApiCacheDir = b.libApiCacheDir;
+        this.dexResultsDir = b.dexResultsDir;
+        this.dexContentDigest = b.dexContentDigest;
+    }
+
+
+    /**
+     * Creates a snapshot of the current (parsed) {@link LibScoutConfig} settings
+     */
+    public static AnalysisContext fromConfig() {
+        return builder()
+            .opmode(LibScoutConfig.opmode)
+            .pathToAndroidJar(LibScoutConfig.pathToAndroidJar)
+            .noPartialMatching(LibScoutConfig.noPartialMatching)
+            .runLibUsageAnalysis(LibScoutConfig.runLibUsageAnalysis)
+            .genVerboseProfiles(LibScoutConfig.genVerboseProfiles)
+            .libDependencyAnalysis(LibScoutConfig.libDependencyAnalysis)
+            .logDir(LibScoutConfig.logDir)
+            .generateStats(LibScoutConfig.generateStats)
+            .statsDir(LibScoutConfig.statsDir)
+            .generateJSON(LibScoutConfig.generateJSON)
+            .jsonDir(LibScoutConfig.jsonDir)
+            .ndjson(LibScoutConfig.Json.ndjson)
+            .ndjsonMaxRecords(LibScoutConfig.Json.ndjsonMaxRecords)
+            .ndjsonCompress(LibScoutConfig.Json.ndjsonCompress)
+            .showComments(LibScoutConfig.Reporting.showComments)
+            .asciiRendering(LibScoutConfig.PckgTree.useAsciiRendering)
+            .profilesDir(LibScoutConfig.profilesDir)
+            .libApiCompatDir(LibScoutConfig.libApiCompatDir)
+            .serialHashing(!LibScoutConfig.Hashing.parallel)
+            .libApiThreads(LibScoutConfig.LibApi.threads)
+            .libApiCacheDir(LibScoutConfig.LibApi.cache? LibScoutConfig.LibApi.cacheDir : null)
+            .dexResultsDir(LibScoutConfig.Triage.dexReuse? LibScoutConfig.Triage.dexReuseDir : null)
+            .dexContentDigest(LibScoutConfig.Triage.dexContentDigest)
+            .build();
+    }
+
+    /**
+     * @return  a builder with all options unset (null, false, 0)
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return  a builder initialized with the settings of this context
+     */
+    public Builder toBuilder() {
+        Builder b = new Builder();
+        b.opmode = opmode;
+        b.pathToAndroidJar = pathToAndroidJar;
+        b.noPartialMatching = noPartialMatching;
+        b.runLibUsageAnalysis = runLibUsageAnalysis;
+        b.genVerboseProfiles = genVerboseProfiles;
+        b.libDependencyAnalysis = libDependencyAnalysis;
+        b.logDir = logDir;
+        b.generateStats = generateStats;
+        b.statsDir = statsDir;
+        b.generateJSON = generateJSON;
+        b.jsonDir = jsonDir;
+        b.ndjson = ndjson;
+        b.ndjsonMaxRecords = ndjsonMaxRecords;
+        b.ndjsonCompress = ndjsonCompress;
+        b.showComments = showComments;
+        b.asciiRendering = asciiRendering;
+        b.profilesDir = profilesDir;
+        b.libApiCompatDir = libApiCompatDir;
+        b.serialHashing = serialHashing;
+        b.libApiThreads = libApiThreads;
+        b.libApiCacheDir = libApiCacheDir;
+        b.dexResultsDir = dexResultsDir;
+        b.dexContentDigest = dexContentDigest;
+        return b;
+    }
+
+
+    public boolean opMatch() { return LibScoutConfig.OpMode.MATCH.equals(opmode); }
+    public boolean opProfile() { return LibScoutConfig.OpMode.PROFILE.equals(opmode); }
+    public boolean opLibApiAnalysis() { return LibScoutConfig.OpMode.LIB_API_ANALYSIS.equals(opmode); }
+    public boolean opUpdatability() { return LibScoutConfig.OpMode.UPDATABILITY.equals(opmode); }
+
+
+    @Override
+    public String toString() {
+        return "AnalysisContext{opmode=" + opmode + ", androidJar=" + pathToAndroidJar + ", noPartialMatching=" + noPartialMatching
+            + ", libUsageAnalysis=" + runLibUsageAnalysis + ", libDependencyAnalysis=" + libDependencyAnalysis
+            + ", stats=" + (generateStats? statsDir : "-") + ", json=" + (generateJSON? jsonDir : "-") + "}";
+    }
+
+
+    public static final class Builder {
+        private LibScoutConfig.OpMode opmode;
+        private File pathToAndroidJar;
+        private boolean noPartialMatching;
+        private boolean runLibUsageAnalysis;
+        private boolean genVerboseProfiles;
+        private boolean libDependencyAnalysis;
+        private File logDir;
+        private boolean generateStats;
+        private File statsDir;
+        private boolean generateJSON;
+        private File jsonDir;
+        private boolean ndjson;
+        private int ndjsonMaxRecords;
+        private boolean ndjsonCompress;
+        private boolean showComments;
+        private boolean asciiRendering;
+        private File profilesDir;
+        private File libApiCompatDir;
+        private boolean serialHashing;
+        private int libApiThreads;
+        private File libApiCacheDir;
+        private File dexResultsDir;
+        private boolean dexContentDigest;
+
+        private Builder() {}
+
+        public Builder opmode(LibScoutConfig.OpMode opmode) { this.opmode = opmode; return this; }
+        public Builder pathToAndroidJar(File pathToAndroidJar) { this.pathToAndroidJar = pathToAndroidJar; return this; }
+        public Builder noPartialMatching(boolean noPartialMatching) { this.noPartialMatching = noPartialMatching; return this; }
+        public Builder runLibUsageAnalysis(boolean runLibUsageAnalysis) { this.runLibUsageAnalysis = runLibUsageAnalysis; return this; }
+        public Builder genVerboseProfiles(boolean genVerboseProfiles) { this.genVerboseProfiles = genVerboseProfiles; return this; }
+        public Builder libDependencyAnalysis(boolean libDependencyAnalysis) { this.libDependencyAnalysis = libDependencyAnalysis; return this; }
+        public Builder logDir(File logDir) { this.logDir = logDir; return this; }
+        public Builder generateStats(boolean generateStats) { this.generateStats = generateStats; return this; }
+        public Builder statsDir(File statsDir) { this.statsDir = statsDir; return this; }
+        public Builder generateJSON(boolean generateJSON) { this.generateJSON = generateJSON; return this; }
+        public Builder jsonDir(File jsonDir) { this.jsonDir = jsonDir; return this; }
+        public Builder ndjson(boolean ndjson) { this.ndjson = ndjson; return this; }
+        public Builder ndjsonMaxRecords(int ndjsonMaxRecords) { this.ndjsonMaxRecords = ndjsonMaxRecords; return this; }
+        public Builder ndjsonCompress(boolean ndjsonCompress) { this.ndjsonCompress = ndjsonCompress; return this; }
+        public Builder showComments(boolean showComments) { this.showComments = showComments; return this; }
+        public Builder asciiRendering(boolean asciiRendering) { this.asciiRendering = asciiRendering; return this; }
+        public Builder profilesDir(File profilesDir) { this.profilesDir = profilesDir; return this; }
+        public Builder libApiCompatDir(File libApiCompatDir) { this.libApiCompatDir = libApiCompatDir; return this; }
+        public Builder serialHashing(boolean serialHashing) { this.serialHashing = serialHashing; return this; }
+        public Builder libApiThreads(int libApiThreads) { this.libApiThreads = libApiThreads; return this; }
+        public Builder libApiCacheDir(File libApiCacheDir) { this.libApiCacheDir = libApiCacheDir; return this; }
+        public Builder dexResultsDir(File dexResultsDir) { this.dexResultsDir = dexResultsDir; return this; }
+        public Builder dexContentDigest(boolean dexContentDigest) { this.dexContentDigest = dexContentDigest; return this; }
+
+        public AnalysisContext build() {
+            return new AnalysisContext(this);
+        }
+    }
+}
@@ -34,7 +34,7 @@ public class LibScoutConfig {
         LIB_API_ANALYSIS("lib_api_analysis", "path_to_lib_sdks"),
 
         // infer library usage in apps and check to which extent detected libs can be updated
-        UPDATABILITY( "updatability",  "[options] -l path_to_lib_api_compat path_to_app(dir)");
+        UPDATABILITY( "updatability",  "[options] -l path_to_lib_api_compat path_to_app(dir)|path_to_app_results(json|ndjson)");
 
         public String name;
         public String usageMsg;
@@ -102,6 +102,40 @@ public class LibScoutConfig {
         public static boolean showComments = false;
     }
 
+    // json output
+    public static class Json {
+        // write one compact json line per app into rotating ndjson files instead of one file per app
+        public static boolean ndjson = false;
+        public static int ndjsonMaxRecords = 100000;
+        public static boolean ndjsonCompress = true;
+    }
+
+    // hash tree generation (app and library profiles)
+    public static class Hashing {
+        // hash the classes of the class hierarchy in parallel
+        public static boolean parallel = true;
+    }
+
+    // library api analysis
+    public static class LibApi {
+        // number of library versions that are analyzed in parallel (0 = number of available processors)
+        public static int threads = 0;
+
+        // cache extracted APIs per library version on disk, such that subsequent runs only parse new/changed versions
+        public static boolean cache = false;
+        public static File cacheDir = new File("./libApiCache");
+    }
+
+    // app triage (match mode)
+    public static class Triage {
+        // reuse the stored results of an already analyzed app with identical dex code (json output only)
+        public static boolean dexReuse = false;
+        public static File dexReuseDir = new File("./dexResults");
+
+        // digest the dex content instead of the zip CRCs and sizes of the dex entries
+        public static boolean dexContentDigest = false;
+    }
+
 
     public static void whoAmI() {
         logger.info("This is " + TOOLNAME + " " + TOOLVERSION);
@@ -155,6 +189,36 @@ public class LibScoutConfig {
             } else if ("reporting.show_comments".equals(key)) {
                 Reporting.showComments = (Boolean) value;
 
+            } else if ("json.ndjson".equals(key)) {
+                Json.ndjson = (Boolean) value;
+
+            } else if ("json.ndjson_max_records".equals(key)) {
+                Json.ndjsonMaxRecords = ((Long) value).intValue();
+
+            } else if ("json.ndjson_compress".equals(key)) {
+                Json.ndjsonCompress = (Boolean) value;
+
+            } else if ("hashing.parallel".equals(key)) {
+                Hashing.parallel = (Boolean) value;
+
+            } else if ("libApi.threads".equals(key)) {
+                LibApi.threads = ((Long) value).intValue();
+
+            } else if ("libApi.cache".equals(key)) {
+                LibApi.cache = (Boolean) value;
+
+            } else if ("libApi.cache_dir".equals(key)) {
+                LibApi.cacheDir = new File((String) value);
+
+            } else if ("triage.dex_reuse".equals(key)) {
+                Triage.dexReuse = (Boolean) value;
+
+            } else if ("triage.dex_reuse_dir".equals(key)) {
+                Triage.dexReuseDir = new File((String) value);
+
+            } else if ("triage.dex_content_digest".equals(key)) {
+                Triage.dexContentDigest = (Boolean) value;
+
             } else
                 logger.warn("Found unknown config key: " + key);
 
@@ -32,6 +32,7 @@ import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import java.io.Serializable;
 import java.util.*;
@@ -98,53 +99,36 @@ public class HashTree implements Serializable {
 	}
 
 	public void generate(IClassHierarchy cha) {
-		logger.debug("Generate hash tree..");
-
-		int classHashCount = 0;
-		int methodHashCount = 0;
+		generate(cha, true);
+	}
 
-		// create map package name -> set of clazzNodes
-		HashMap<String, List<ClassNode>> packageMap = new HashMap<>();
+	/**
+	 * @param cha  the {@link IClassHierarchy} whose app classes are hashed
+	 * @param parallel  if true, the classes are hashed in parallel, otherwise serially. Both variants generate identical trees
+	 */
+	public void generate(IClassHierarchy cha, boolean parallel) {
+		logger.debug("Generate hash tree..");
+		long s = System.currentTimeMillis();
 
+		// app classes are hashed with per-thread accumulators that are merged at the end (lookups in the class hierarchy
+		// are synchronized on the cha). The stream is ordered, i.e. the merged per-package class lists of a parallel scan
+		// are identical to a serial scan
+		final List<IClass> appClasses = new ArrayList<IClass>();
 		for (IClass clazz: cha) {
-			if (WalaUtils.isAppClass(clazz)) {
-
-				Collection<? extends IMethod> methods = clazz.getDeclaredMethods();
-
-				// filter methods by access flag
-				if (config.accessFlagsFilter != AccessFlags.NO_FLAG) {
-					methods = methods.stream()
-						.filter(m -> { int code = AccessFlags.getMethodAccessCode(m);  return code > 0 && (code & config.accessFlagsFilter.getValue()) == 0x0; })  // if predicate is true, keep in list
-						.collect(Collectors.toCollection(ArrayList::new));
-				}
-
-				List<MethodNode> methodNodes = methods.stream()
-					 .filter(m -> !(m.isBridge() || m.isSynthetic()))  // normalize java|dex bytecode by skipping compiler-generated methods
-					 .map(m -> mnComp.comp(m, config))
-					 .sorted(HashUtils.comp)  // sort but do not filter dups
-					 .collect(Collectors.toList());
-
-				// normalize - skip classes with no methods
-				if (methodNodes.isEmpty()) {
-					logger.trace(Utils.INDENT + ">> No methods found for clazz: " + WalaUtils.simpleName(clazz));
-					continue;
-				}
-
-				// update stats
-				methodHashCount += methodNodes.size();
-				classHashCount++;
-
-				ClassNode clazzNode = cnComp.comp(methodNodes, clazz, config);
-
-				// keep track on classes per package
-				String pckgName = PackageUtils.getPackageName(clazz);
-				if (!packageMap.containsKey(pckgName)) {
-					packageMap.put(pckgName, new ArrayList<>());
-				}
-				packageMap.get(pckgName).add(clazzNode);
-			}
+			if (WalaUtils.isAppClass(clazz))
+				appClasses.add(clazz);
 		}
 
+		final String logContext = MDC.get(Utils.LOG_CONTEXT_KEY);  // keep the per-app log in worker threads
+		ClassNodes result = (parallel? appClasses.parallelStream() : appClasses.stream())
+			.collect(ClassNodes::new,
+			         (res, clazz) -> { Utils.setLogContext(logContext); genClassNode(clazz, res); },
+			         ClassNodes::merge);
+		logger.debug(Utils.INDENT + "- hashed " + appClasses.size() + " app classes " + (parallel? "in parallel" : "serially")
+			+ " (in " + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - s) + ")");
+
+		// map package name -> set of clazzNodes
+		HashMap<String, List<ClassNode>> packageMap = result.packageMap;
 		packageMap.values().forEach(l -> l.sort(HashUtils.comp));  // sort class nodes
 		List<PackageNode> packageNodes = packageMap.keySet().stream()
 			.map(p -> pnComp.comp(packageMap.get(p), p, cha, config))
@@ -155,11 +139,68 @@ public class HashTree implements Serializable {
 		rootNode = compNode(packageNodes, false, config.getHasher());
 
 		logger.debug(Utils.INDENT + "- generated " + packageNodes.size() + " package hashes.");
-		logger.debug(Utils.INDENT + "- generated " + classHashCount    + " clazz hashes.");
-		logger.debug(Utils.INDENT + "- generated " + methodHashCount   + " method hashes.");
+		logger.debug(Utils.INDENT + "- generated " + result.classHashCount    + " clazz hashes.");
+		logger.debug(Utils.INDENT + "- generated " + result.methodHashCount   + " method hashes.");
 		logger.debug(Utils.INDENT + "=> Library Hash: " + HashUtils.hash2Str(rootNode.hash));
 	}
 
+	private void genClassNode(IClass clazz, ClassNodes res) {
+		Collection<? extends IMethod> methods = clazz.getDeclaredMethods();
+
+		// filter methods by access flag
+		if (config.accessFlagsFilter != AccessFlags.NO_FLAG) {
+			methods = methods.stream()
+				.filter(m -> { int code = AccessFlags.getMethodAccessCode(m);  return code > 0 && (code & config.accessFlagsFilter.getValue()) == 0x0; })  // if predicate is true, keep in list
+				.collect(Collectors.toCollection(ArrayList::new));
+		}
+
+		List<MethodNode> methodNodes = methods.stream()
+			 .filter(m -> !(m.isBridge() || m.isSynthetic()))  // normalize java|dex bytecode by skipping compiler-generated methods
+			 .map(m -> mnComp.comp(m, config))
+			 .sorted(HashUtils.comp)  // sort but do not filter dups
+			 .collect(Collectors.toList());
+
+		// normalize - skip classes with no methods
+		if (methodNodes.isEmpty()) {
+			logger.trace(Utils.INDENT + ">> No methods found for clazz: " + WalaUtils.simpleName(clazz));
+			return;
+		}
+
+		// update stats
+		res.methodHashCount += methodNodes.size();
+		res.classHashCount++;
+
+		ClassNode clazzNode = cnComp.comp(methodNodes, clazz, config);
+
+		// keep track on classes per package
+		String pckgName = PackageUtils.getPackageName(clazz);
+		if (!res.packageMap.containsKey(pckgName)) {
+			res.packageMap.put(pckgName, new ArrayList<>());
+		}
+		res.packageMap.get(pckgName).add(clazzNode);
+	}
+
+	/**
+	 * Per-thread accumulator of the class nodes generated during {@link #generate(IClassHierarchy)}
+	 */
+	private static class ClassNodes {
+		final HashMap<String, List<ClassNode>> packageMap = new HashMap<>();
+		int classHashCount = 0;
+		int methodHashCount = 0;
+
+		void merge(ClassNodes other) {
+			for (Map.Entry<String, List<ClassNode>> e: other.packageMap.entrySet()) {
+				List<ClassNode> l = packageMap.get(e.getKey());
+				if (l == null)
+					packageMap.put(e.getKey(), e.getValue());
+				else
+					l.addAll(e.getValue());
+			}
+			classHashCount += other.classHashCount;
+			methodHashCount += other.methodHashCount;
+		}
+	}
+
 
 	/*
 	 * Getter methods
@@ -2,8 +2,10 @@ package de.infsec.tpl.hashtree.comp.method;
 
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.TypeReference;
 import de.infsec.tpl.hashtree.HashTree;
 import de.infsec.tpl.hashtree.TreeConfig;
 import de.infsec.tpl.hashtree.node.MethodNode;
@@ -12,10 +14,17 @@ import de.infsec.tpl.utils.WalaUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 
 public class SignatureMethodNodeComp implements IMethodNodeComp {
     private static final Logger logger = LoggerFactory.getLogger(HashTree.class);
 
+    // memoized custom type checks, i.e. each type takes the class hierarchy lock only once.
+    // A comp instance is therefore bound to the class hierarchy of a single hash tree
+    private final Map<TypeReference, Boolean> customTypes = new ConcurrentHashMap<>();
+
 
     @Override
     public MethodNode comp(IMethod m, TreeConfig config) {
@@ -60,7 +69,7 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
      * @param m   the {@link IMethod} to normalize
      * @return  null if this normalization does not apply, otherwise the normalized fuzzy descriptor {@see getFuzzyDescriptor}
      */
-    private static String normalizeAnonymousInnerClassConstructor(IMethod m) {
+    private String normalizeAnonymousInnerClassConstructor(IMethod m) {
         if (WalaUtils.isAnonymousInnerInnerClass(m.getDeclaringClass()) && m.isInit() && m.getNumberOfParameters() > 1) {
             // this can be anything -> normalize constructor to (X)V
             logger.trace("[normalizeAnonymousInnerClassConstructor] found anonymous inner inner class constructor: "+ m.getSignature());
@@ -78,18 +87,19 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
             // check if both argument types are custom types
             for (int i : new Integer[]{1, 2}) {
                 if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-                    IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(1));
-                    boolean isAppClazz = ct == null || WalaUtils.isAppClass(ct);
-                    if (!isAppClazz)
+                    if (!isCustomType(m.getClassHierarchy(), m.getParameterType(1)))
                         return null;
                 } else
                     return null;
             }
 
             IClass superClazz = null;
+            IClassHierarchy cha = m.getClassHierarchy();
             try {
-                IClass ic = WalaUtils.lookupClass(m.getClassHierarchy(), enclosingClazzName);
-                superClazz = ic.getSuperclass();
+                synchronized (cha) {  // see WalaUtils#lookupClassSynchronized, the superclass is lazily resolved
+                    IClass ic = WalaUtils.lookupClass(cha, enclosingClazzName);
+                    superClazz = ic.getSuperclass();
+                }
             } catch (ClassNotFoundException e) {
                 // class lookup can also fail for lambdas, e.g. if superclass is kotlin.jvm.internal.Lambda
                 // we then default to fuzzy descriptor
@@ -111,8 +121,7 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
                 for (int i = 2; i < m.getNumberOfParameters(); i++) {
 
                     if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-                        IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(i));
-                        boolean isAppClazz = ct == null || WalaUtils.isAppClass(ct);
+                        boolean isAppClazz = isCustomType(m.getClassHierarchy(), m.getParameterType(i));
                         sb.append(isAppClazz ? customTypeReplacement : m.getParameterType(i).getName().toString());
                     } else
                         sb.append(m.getParameterType(i).getName().toString());
@@ -129,6 +138,22 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
 
     private static final String customTypeReplacement = "X";
 
+    /**
+     * A type of the application classloader is a custom type if it is either an app class or
+     * not part of the class hierarchy at all (e.g. types of a missing library dependency)
+     * @param cha  the {@link IClassHierarchy} of the hashed classes
+     * @param type  a {@link TypeReference} of the application classloader
+     * @return true if the type is replaced in the fuzzy descriptor, false otherwise
+     */
+    private boolean isCustomType(IClassHierarchy cha, TypeReference type) {
+        return customTypes.computeIfAbsent(type, t -> {
+            synchronized (cha) {  // see WalaUtils#lookupClassSynchronized, isAppClass resolves the interfaces of the class
+                IClass ct = cha.lookupClass(t);
+                return ct == null || WalaUtils.isAppClass(ct);
+            }
+        });
+    }
+
     /**
      * A {@link Descriptor} only describes input arg types + return type, e.g.
      * The Descriptor of AdVideoView.onError(Landroid/media/MediaPlayer;II)Z  is (Landroid/media/MediaPlayerII)Z
@@ -139,7 +164,7 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
      * @param m  {@link IMethod}
      * @return a fuzzy descriptor
      */
-    private static String getFuzzyDescriptor(IMethod m) {
+    private String getFuzzyDescriptor(IMethod m) {
         logger.trace("[getFuzzyDescriptor]");
         logger.trace("-  signature: " + m.getSignature());
         logger.trace("- descriptor: " + m.getDescriptor().toString());
@@ -150,8 +175,7 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
             boolean isAppClazz = false;
 
             if (m.getParameterType(i).getClassLoader().equals(ClassLoaderReference.Application)) {
-                IClass ct = m.getClassHierarchy().lookupClass(m.getParameterType(i));
-                isAppClazz = ct == null || WalaUtils.isAppClass(ct);
+                isAppClazz = isCustomType(m.getClassHierarchy(), m.getParameterType(i));
                 sb.append(isAppClazz? customTypeReplacement : m.getParameterType(i).getName().toString());
             } else
                 sb.append(m.getParameterType(i).getName().toString());
@@ -161,8 +185,7 @@ public class SignatureMethodNodeComp implements IMethodNodeComp {
         //logger.trace("");
         sb.append(")");
         if (m.getReturnType().getClassLoader().equals(ClassLoaderReference.Application)) {
-            IClass ct = m.getClassHierarchy().lookupClass(m.getReturnType());
-            sb.append(ct == null || WalaUtils.isAppClass(ct)? customTypeReplacement : m.getReturnType().getName().toString());
+            sb.append(isCustomType(m.getClassHierarchy(), m.getReturnType())? customTypeReplacement : m.getReturnType().getName().toString());
         } else
             sb.append(m.getReturnType().getName().toString());
 
@@ -6,16 +6,27 @@ import java.util.Collection;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import de.infsec.tpl.pkg.PackageName;
+
 
 public class PackageNode extends Node implements Serializable {
     private static final long serialVersionUID = 3390771073564531337L;
     public String packageName;
 
+    // tokenized package name, lazily created (not serialized)
+    private transient PackageName pckgName;
+
     public PackageNode(byte[] hash, String packageName) {
         super(hash);
         this.packageName = packageName;
     }
 
+    public PackageName getPackageName() {
+        if (pckgName == null)
+            pckgName = PackageName.of(packageName);
+        return pckgName;
+    }
+
   /*  @Override
     public void debug() {
         logger.info("Debug PackageNode: " + packageName + " (childs: " + childs.size() + ",  " + Hash.hash2Str(hash) + ")");
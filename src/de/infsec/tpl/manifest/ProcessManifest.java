@@ -18,12 +18,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
-import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -38,6 +36,7 @@ import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlPullParser;
 
 import android.content.res.AXmlResourceParser;
+import de.infsec.tpl.utils.ApkContainer;
 import pxb.android.axml.AXMLPrinter;
 
 
@@ -57,7 +56,7 @@ public class ProcessManifest implements Serializable {
 	private Set<String> permissions = new TreeSet<String>();
 	private Set<String> libDependencies = new HashSet<String>();
 	
-	public final String MANIFEST_FILENAME = "AndroidManifest.xml";
+	public final String MANIFEST_FILENAME = ApkContainer.MANIFEST_FILENAME;
 	
 	/**
 	 * Opens the given apk file and provides the given handler with a stream for
@@ -73,33 +72,28 @@ public class ProcessManifest implements Serializable {
 		if (!apkF.exists())
 			throw new RuntimeException("file '" + apk + "' does not exist!");
 
-		boolean found = false;
-		try {
-			ZipFile archive = null;
-			try {
-				archive = new ZipFile(apkF);
-				Enumeration<?> entries = archive.entries();
-				while (entries.hasMoreElements()) {
-					ZipEntry entry = (ZipEntry) entries.nextElement();
-					String entryName = entry.getName();
-					// We are dealing with the Android manifest
-					if (entryName.equals(MANIFEST_FILENAME)) {
-						found = true;
-						handler.handleManifest(archive.getInputStream(entry));
-						break;
-					}
-				}
-			}
-			finally {
-				if (archive != null)
-					archive.close();
-			}
-		}
-		catch (Exception e) {
+		try (ApkContainer archive = new ApkContainer(apkF)) {
+			handleAndroidManifestFile(archive, handler);
+		} catch (IOException e) {
 			throw new RuntimeException("Error when looking for manifest in apk: " + e);
 		}
-		if (!found)
+	}
+
+	/**
+	 * Provides the given handler with a stream for accessing the android manifest file of an already opened apk
+	 * @param apk The opened apk file
+	 * @param handler The handler for processing the apk file
+	 */
+	private void handleAndroidManifestFile(ApkContainer apk, IManifestHandler handler) {
+		ZipEntry entry = apk.getManifestEntry();
+		if (entry == null)
 			throw new RuntimeException("No manifest file found in apk");
+
+		try (InputStream is = apk.getInputStream(entry)) {
+			handler.handleManifest(is);
+		} catch (IOException e) {
+			throw new RuntimeException("Error when looking for manifest in apk: " + e);
+		}
 	}
 	
 	public void loadManifestFile(String apk) {
@@ -112,6 +106,16 @@ public class ProcessManifest implements Serializable {
 		});
 	}
 
+	public void loadManifestFile(ApkContainer apk) {
+		handleAndroidManifestFile(apk, new IManifestHandler() {
+
+			@Override
+			public void handleManifest(InputStream stream) {
+				loadClassesFromBinaryManifest(stream);
+			}
+		});
+	}
+
 	
 	// TODO TODO: parse meta data
 	protected void loadClassesFromBinaryManifest(InputStream manifestIS) {
@@ -126,8 +130,8 @@ public class ProcessManifest implements Serializable {
 					case XmlPullParser.START_DOCUMENT:
 						break;
 					case XmlPullParser.START_TAG:
-						String tagName = parser.getName();
-						if (tagName.equals("manifest")) {
+						// tag names are compared against the raw string pool entries
+						if (parser.isName("manifest")) {
 							this.packageName = getAttributeValue(parser, "package");
 							this.sharedUserId = getAttributeValue(parser, "sharedUserId");
 							try {
@@ -136,10 +140,10 @@ public class ProcessManifest implements Serializable {
 								logger.warn("Could not parse versionCode: " + getAttributeValue(parser, "versionCode"));
 							}
 							// TODO parse shareduser id label if we have a string parser
-						} else if (tagName.equals("activity")
-								|| tagName.equals("receiver")
-								|| tagName.equals("service")
-								|| tagName.equals("provider")) {
+						} else if (parser.isName("activity")
+								|| parser.isName("receiver")
+								|| parser.isName("service")
+								|| parser.isName("provider")) {
 							// We ignore disabled activities
 							if (!applicationEnabled)
 								continue;
@@ -151,18 +155,18 @@ public class ProcessManifest implements Serializable {
 							attrValue = getAttributeValue(parser, "name");
 							entryPointsClasses.add(expandClassName(attrValue));
 						}
-						else if (tagName.equals("uses-permission")) {
+						else if (parser.isName("uses-permission")) {
 							String permissionName = getAttributeValue(parser, "name");
 							// We probably don't want to do this in some cases, so leave it
 							// to the user
 							// permissionName = permissionName.substring(permissionName.lastIndexOf(".") + 1);
 							this.permissions.add(permissionName);
 						}
-						else if (tagName.equals("uses-library")) {
+						else if (parser.isName("uses-library")) {
 							String libraryName = getAttributeValue(parser, "name");
 							this.libDependencies.add(libraryName);
 						}
-						else if (tagName.equals("uses-sdk")) {
+						else if (parser.isName("uses-sdk")) {
 							try {
 								this.minSdkVersion = Integer.parseInt(getAttributeValue(parser, "minSdkVersion"));
 							} catch (NumberFormatException e) {
@@ -173,7 +177,7 @@ public class ProcessManifest implements Serializable {
 							} catch (NumberFormatException e) { /* targetSdkValue is optional */	}
 
 						}
-						else if (tagName.equals("application")) {
+						else if (parser.isName("application")) {
 							// Check whether the application is disabled
 							String attrValue = getAttributeValue(parser, "enabled");
 							applicationEnabled = (attrValue == null || !attrValue.equals("false"));
@@ -214,7 +218,7 @@ public class ProcessManifest implements Serializable {
 
 	private String getAttributeValue(AXmlResourceParser parser, String attributeName) {
 		for (int i = 0; i < parser.getAttributeCount(); i++)
-			if (parser.getAttributeName(i).equals(attributeName))
+			if (parser.isAttributeName(i, attributeName))
 				return AXMLPrinter.getAttributeValue(parser, i);
 		return "";
 	}
@@ -0,0 +1,214 @@
+package de.infsec.tpl.modules.libapi;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.types.TypeReference;
+import de.infsec.tpl.utils.WalaUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Immutable, class hierarchy independent representation of a documented library API.
+ * Captures everything needed to compare APIs across library versions (see {@link LibApiComparator}),
+ * such that per-version class hierarchies do not have to be kept. Two APIs are equal if their
+ * signatures and access flags match, the parameter super classes are version-specific (see {@link LibApiStats}).
+ */
+public final class ApiSignature implements Comparable<ApiSignature> {
+    public final String signature;
+    public final int accessFlags;
+
+    public final String declaringClass;   // simple class name
+    public final String name;
+    public final String descriptor;
+    public final String returnType;
+    public final boolean isStatic;
+
+    // parameter types including the implicit this for instance methods (cf. IMethod#getParameterType)
+    private final String[] paramTypes;          // TypeReference#toString
+    private final String[] paramTypeNames;      // TypeName#toString
+    private final boolean[] paramPrimitive;
+    private final String[][] paramSuperClasses; // simple names of the super classes of a parameter type, null if not resolvable
+
+
+    private ApiSignature(String signature, int accessFlags, String declaringClass, String name, String descriptor, String returnType, boolean isStatic,
+                         String[] paramTypes, String[] paramTypeNames, boolean[] paramPrimitive, String[][] paramSuperClasses) {
+        this.signature = signature;
+        this.accessFlags = accessFlags;
+        this.declaringClass = declaringClass;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.returnType = returnType;
+        this.isStatic = isStatic;
+        this.paramTypes = paramTypes;
+        this.paramTypeNames = paramTypeNames;
+        this.paramPrimitive = paramPrimitive;
+        this.paramSuperClasses = paramSuperClasses;
+    }
+
+
+    /**
+     * @param m  the API method
+     * @param superClassCache  per class hierarchy cache of parameter type -> super class names
+     */
+    static ApiSignature of(IMethod m, Map<TypeReference, String[]> superClassCache) {
+        int n = m.getNumberOfParameters();
+        String[] paramTypes = new String[n];
+        String[] paramTypeNames = new String[n];
+        boolean[] paramPrimitive = new boolean[n];
+        String[][] paramSuperClasses = new String[n][];
+
+        for (int i = 0; i < n; i++) {
+            TypeReference t = m.getParameterType(i);
+            paramTypes[i] = t.toString();
+            paramTypeNames[i] = t.getName().toString();
+            paramPrimitive[i] = t.isPrimitiveType();
+
+            if (!paramPrimitive[i])
+                paramSuperClasses[i] = superClassCache.computeIfAbsent(t, tr -> lookupSuperClasses(m.getClassHierarchy().lookupClass(tr)));
+        }
+
+        return new ApiSignature(m.getSignature(), JvmMethodAccessFlags.getMethodAccessCode(m), WalaUtils.simpleName(m.getDeclaringClass()),
+                                WalaUtils.getName(m), m.getDescriptor().toString(), m.getReturnType().toString(), m.isStatic(),
+                                paramTypes, paramTypeNames, paramPrimitive, paramSuperClasses);
+    }
+
+    private static String[] lookupSuperClasses(IClass clazz) {
+        // could be null because it's a type of a different library (sub-dependency) that is not part of the cha
+        if (clazz == null)
+            return null;
+
+        List<IClass> superClazzes = WalaUtils.getSuperClasses(clazz);
+        return superClazzes.stream().map(WalaUtils::simpleName).toArray(String[]::new);
+    }
+
+
+    /**
+     * @return  number of parameters including the implicit this for instance methods
+     */
+    public int getNumberOfParameters() {
+        return paramTypes.length;
+    }
+
+    public String getParameterType(int i) {
+        return paramTypes[i];
+    }
+
+    public String getParameterTypeName(int i) {
+        return paramTypeNames[i];
+    }
+
+    public boolean isPrimitiveParameter(int i) {
+        return paramPrimitive[i];
+    }
+
+    /**
+     * @return  simple names of all super classes of the parameter type or null, if the type could not be resolved
+     */
+    public String[] getParameterSuperClasses(int i) {
+        return paramSuperClasses[i];
+    }
+
+    /**
+     * Equal APIs of different library versions can still differ in the type hierarchy of their parameters
+     * @return  true, if both APIs have the same parameter super classes
+     */
+    boolean hasSameParameterSuperClasses(ApiSignature api) {
+        return Arrays.deepEquals(paramSuperClasses, api.paramSuperClasses);
+    }
+
+
+    /*
+     * Serialization (see {@link LibApiCache})
+     */
+
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(signature);
+        out.writeInt(accessFlags);
+        out.writeUTF(declaringClass);
+        out.writeUTF(name);
+        out.writeUTF(descriptor);
+        out.writeUTF(returnType);
+        out.writeBoolean(isStatic);
+
+        out.writeInt(paramTypes.length);
+        for (int i = 0; i < paramTypes.length; i++) {
+            out.writeUTF(paramTypes[i]);
+            out.writeUTF(paramTypeNames[i]);
+            out.writeBoolean(paramPrimitive[i]);
+
+            if (paramSuperClasses[i] == null)
+                out.writeInt(-1);
+            else {
+                out.writeInt(paramSuperClasses[i].length);
+                for (String s: paramSuperClasses[i])
+                    out.writeUTF(s);
+            }
+        }
+    }
+
+    static ApiSignature read(DataInput in) throws IOException {
+        String signature = in.readUTF();
+        int accessFlags = in.readInt();
+        String declaringClass = in.readUTF();
+        String name = in.readUTF();
+        String descriptor = in.readUTF();
+        String returnType = in.readUTF();
+        boolean isStatic = in.readBoolean();
+
+        int n = in.readInt();
+        String[] paramTypes = new String[n];
+        String[] paramTypeNames = new String[n];
+        boolean[] paramPrimitive = new boolean[n];
+        String[][] paramSuperClasses = new String[n][];
+
+        for (int i = 0; i < n; i++) {
+            paramTypes[i] = in.readUTF();
+            paramTypeNames[i] = in.readUTF();
+            paramPrimitive[i] = in.readBoolean();
+
+            int k = in.readInt();
+            if (k >= 0) {
+                paramSuperClasses[i] = new String[k];
+                for (int j = 0; j < k; j++)
+                    paramSuperClasses[i][j] = in.readUTF();
+            }
+        }
+
+        return new ApiSignature(signature, accessFlags, declaringClass, name, descriptor, returnType, isStatic,
+                                paramTypes, paramTypeNames, paramPrimitive, paramSuperClasses);
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ApiSignature))
+            return false;
+
+        ApiSignature api = (ApiSignature) obj;
+        return accessFlags == api.accessFlags && signature.equals(api.signature);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * signature.hashCode() + accessFlags;
+    }
+
+    @Override
+    public int compareTo(ApiSignature api) {
+        int res = signature.compareTo(api.signature);
+        return res != 0? res : Integer.compare(accessFlags, api.accessFlags);
+    }
+
+    @Override
+    public String toString() {
+        return signature;
+    }
+}
@@ -5,6 +5,7 @@ import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import de.infsec.tpl.pkg.PackageName;
 import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.pkg.PackageUtils;
 import de.infsec.tpl.stats.Exportable;
@@ -19,7 +20,8 @@ import java.util.stream.Collectors;
 
 /**
  * Feature: Tests for nested/secondary library dependencies, i.e. libraries depending on other libraries.
- * The analysis is performed for every documented API of every lib version via reachability analysis
+ * The analysis is performed for every documented API of every lib version via reachability analysis.
+ * It runs directly after the API extraction of a version, such that its class hierarchy can be released afterwards.
  */
 public class DependencyAnalysis {
     private static final Logger logger = LoggerFactory.getLogger(DependencyAnalysis.class);
@@ -30,10 +32,10 @@ public class DependencyAnalysis {
     class LibDependencies implements Exportable {
         Version version;
 
-        // documented APIs to set of APIs from dependencies
-        Map<IMethod, Set<CallSiteReference>> api2Dependencies;
+        // documented API signatures to set of API signatures from dependencies
+        Map<String, Set<String>> api2Dependencies;
 
-        LibDependencies(Version version, Map<IMethod, Set<CallSiteReference>> api2Dependencies) {
+        LibDependencies(Version version, Map<String, Set<String>> api2Dependencies) {
             this.version = version;
             this.api2Dependencies = api2Dependencies;
         }
@@ -51,8 +53,7 @@ public class DependencyAnalysis {
             public Export(LibDependencies deps) {
                 this.version = deps.version.toString();
 
-                for (IMethod m: deps.api2Dependencies.keySet())
-                    this.api2Dependencies.put(m.getSignature(), deps.api2Dependencies.get(m).stream().map(c -> c.getDeclaredTarget().getSignature()).collect(Collectors.toSet()));
+                this.api2Dependencies.putAll(deps.api2Dependencies);
             }
         }
     }
@@ -60,24 +61,30 @@ public class DependencyAnalysis {
 
 
 
-    // need to infer expected and actual semver
-    protected Map<Version, DependencyAnalysis.LibDependencies> run(LibApiStats stats) {
-        Map<Version, LibDependencies> version2Deps = new TreeMap<Version, LibDependencies>();
+    /**
+     * Analyze the secondary dependencies of a single library version
+     * @param libName  the library name
+     * @param version  the library version
+     * @param pubApis  the documented APIs of this version, their class hierarchy is only needed during this call
+     */
+    protected LibDependencies run(String libName, Version version, Set<IMethod> pubApis) {
+        Map<String, Set<String>> secDeps = analyzeDependencies(pubApis);
+        logger.info(Utils.INDENT + "- " + libName + " (" + version + "): " + secDeps.size() + "/" + pubApis.size() + " APIs with secondary dependencies");
 
-        for (Version version: stats.getVersions()) {
-            logger.info(Utils.INDENT + "- version: " + version);
-            Map<IMethod, Set<CallSiteReference>> api2Dependencies = analyzeDependencies(stats.getDocumentedAPIs(version));
-            version2Deps.put(version, new LibDependencies(version, api2Dependencies));
-        }
+        return new LibDependencies(version, secDeps);
+    }
 
 
-        // debug collect all dependencies (APIs) per lib (incl. all versions)
+    /**
+     * Print dependencies (APIs) per lib (incl. all versions)
+     */
+    protected void printDependencies(LibApiStats stats, boolean asciiRendering) {
         Set<String> signatures = new TreeSet<String>();
-        version2Deps.values().
+        stats.version2Deps.values().
                 forEach(ld -> {
                     ld.api2Dependencies.values()
                         .forEach(set -> {
-                            set.forEach(csf -> signatures.add(PackageUtils.getPackageName(csf.getDeclaredTarget().getSignature())));
+                            set.forEach(sig -> signatures.add(PackageUtils.getPackageName(sig)));
                         })
                     ;}
                 );
@@ -85,58 +92,24 @@ public class DependencyAnalysis {
         logger.info(Utils.INDENT + "-> Dependencies of " + stats.libName);
         signatures.forEach(s -> logger.info(Utils.INDENT2 + "- dep: " + s));
         PackageTree pt = PackageTree.make(signatures);
-        pt.print(true);
+        pt.print(true, asciiRendering);
         /// TODO show empty packages + non-empty on depth == 1
-
-        return version2Deps;
     }
 
 
-    private Map<IMethod, Set<CallSiteReference>> analyzeDependencies(Set<IMethod> pubApis) {
-        HashMap<IMethod, Set<CallSiteReference>> secDeps = new HashMap<IMethod, Set<CallSiteReference>>();
+    private Map<String, Set<String>> analyzeDependencies(Set<IMethod> pubApis) {
+        HashMap<String, Set<String>> secDeps = new HashMap<String, Set<String>>();
 
         // perform method reachability analysis for every pubAPI
+        // methods reachable from multiple APIs are only analyzed once per version
+        MethodSummaries summaries = new MethodSummaries();
+
         for (IMethod docApi: pubApis) {
             logger.debug("-> check API: " + docApi.getSignature());
 
-            LinkedList<IMethod> queue = new LinkedList<IMethod>();
-            queue.push(docApi);
-
-            // types to methods signatures in which they are used
-            Set<CallSiteReference> unresolvedCalls = new HashSet<CallSiteReference>();
-            Set<String> visited = new HashSet<String>();
-
-            // Check method invocations
-            try {
-                while (!queue.isEmpty()) {
-                    IMethod m = queue.poll();
-
-                    if (!visited.add(m.getSignature()))
-                        continue;
-
-                    for (CallSiteReference csf : com.ibm.wala.classLoader.CodeScanner.getCallSites(m)) {
-                        IClass c = m.getClassHierarchy().lookupClass(csf.getDeclaredTarget().getDeclaringClass());
-                        IMethod inv = m.getClassHierarchy().resolveMethod(csf.getDeclaredTarget());
-
-                        if (inv == null) {
-                            // inherited final methods can not be looked up or (abstract) interface methods inherited from another interface
-                            // workaround, we check if the class is part of the CHA
-                            if (c == null) {
-                                logger.trace("         ## unresolved call: " + csf.getDeclaredTarget().getSignature() + (csf.isInterface() ? "  [Interface]" : ""));
-                                unresolvedCalls.add(csf);
-                            }
-                        } else {
-                            if (c != null && WalaUtils.isAppClass(c))
-                                queue.push(inv);
-                        }
-                    }
-                }
-            } catch (InvalidClassFileException e) {
-                logger.error(Utils.stacktrace2Str(e));
-            }
-
+            Set<String> unresolvedCalls = summaries.get(docApi);
             if (!unresolvedCalls.isEmpty()) {
-                secDeps.put(docApi, unresolvedCalls);
+                secDeps.put(docApi.getSignature(), unresolvedCalls);
             }
         }
 
@@ -144,21 +117,148 @@ public class DependencyAnalysis {
         // Results
         secDeps.keySet()
                 .forEach(m -> {
-                    logger.debug("- Method: " + m.getSignature());
+                    logger.debug("- Method: " + m);
                     secDeps.get(m).stream()
-                            .map(c -> c.getDeclaredTarget().getSignature())
-                            .sorted().distinct()
+                            .sorted()
                             .forEach(s -> logger.debug("  - dep: " + s));
                 });
 
-        logger.info(Utils.INDENT2 + "- " + secDeps.size() + "/" + pubApis.size() + " APIs with secondary dependencies");
-
         return secDeps;
     }
 
 
 
 
+    /**
+     * Per-method summaries of all unresolved (i.e. dependency) call targets that are reachable from a method.
+     * Call sites of every method are scanned and resolved only once. Summaries are computed bottom-up over the strongly
+     * connected components of the call graph (Tarjan), i.e. all methods of a recursive cycle share the same summary.
+     */
+    private static class MethodSummaries {
+        private final Map<String, MethodInfo> sig2Info = new HashMap<String, MethodInfo>();
+        private int index = 0;
+
+        private static class MethodInfo {
+            final IMethod method;
+            List<IMethod> callees;       // resolved calls to library code
+            Set<String> unresolved;      // signatures of unresolved call targets of this method
+            Set<String> summary;         // unresolved call targets of all reachable methods, set once its SCC is complete
+
+            int index = -1;
+            int lowLink;
+            int nextCallee = 0;
+            boolean onStack = false;
+
+            MethodInfo(IMethod method) {
+                this.method = method;
+            }
+        }
+
+
+        Set<String> get(IMethod root) {
+            MethodInfo r = getInfo(root);
+            if (r.summary != null)
+                return r.summary;
+
+            Deque<MethodInfo> sccStack = new ArrayDeque<MethodInfo>();
+            Deque<MethodInfo> callStack = new ArrayDeque<MethodInfo>();
+            visit(r, sccStack, callStack);
+
+            // iterative Tarjan to not overflow the stack on deep call chains
+            while (!callStack.isEmpty()) {
+                MethodInfo v = callStack.peek();
+
+                if (v.nextCallee < v.callees.size()) {
+                    MethodInfo w = getInfo(v.callees.get(v.nextCallee++));
+
+                    if (w.index == -1)
+                        visit(w, sccStack, callStack);
+                    else if (w.onStack)
+                        v.lowLink = Math.min(v.lowLink, w.index);
+                } else {
+                    callStack.pop();
+                    if (!callStack.isEmpty())
+                        callStack.peek().lowLink = Math.min(callStack.peek().lowLink, v.lowLink);
+
+                    if (v.lowLink == v.index)
+                        completeScc(v, sccStack);
+                }
+            }
+
+            return r.summary;
+        }
+
+        private void visit(MethodInfo v, Deque<MethodInfo> sccStack, Deque<MethodInfo> callStack) {
+            scan(v);
+            v.index = v.lowLink = index++;
+            v.onStack = true;
+            sccStack.push(v);
+            callStack.push(v);
+        }
+
+        private void completeScc(MethodInfo root, Deque<MethodInfo> sccStack) {
+            List<MethodInfo> scc = new ArrayList<MethodInfo>();
+            MethodInfo w;
+            do {
+                w = sccStack.pop();
+                w.onStack = false;
+                scc.add(w);
+            } while (w != root);
+
+            // successor SCCs are always completed first
+            Set<String> summary = new HashSet<String>();
+            for (MethodInfo m: scc) {
+                summary.addAll(m.unresolved);
+                for (IMethod c: m.callees) {
+                    Set<String> cSummary = getInfo(c).summary;
+                    if (cSummary != null) summary.addAll(cSummary);
+                }
+
+                // scan results are no longer needed
+                m.callees = Collections.emptyList();
+                m.unresolved = null;
+            }
+
+            for (MethodInfo m: scc)
+                m.summary = summary;
+        }
+
+        private MethodInfo getInfo(IMethod m) {
+            return sig2Info.computeIfAbsent(m.getSignature(), k -> new MethodInfo(m));
+        }
+
+        private void scan(MethodInfo info) {
+            IMethod m = info.method;
+            info.callees = new ArrayList<IMethod>();
+            info.unresolved = new HashSet<String>();
+
+            // Check method invocations
+            try {
+                for (CallSiteReference csf : com.ibm.wala.classLoader.CodeScanner.getCallSites(m)) {
+                    IClass c = m.getClassHierarchy().lookupClass(csf.getDeclaredTarget().getDeclaringClass());
+                    IMethod inv = m.getClassHierarchy().resolveMethod(csf.getDeclaredTarget());
+
+                    if (inv == null) {
+                        // inherited final methods can not be looked up or (abstract) interface methods inherited from another interface
+                        // workaround, we check if the class is part of the CHA
+                        if (c == null) {
+                            logger.trace("         ## unresolved call: " + csf.getDeclaredTarget().getSignature() + (csf.isInterface() ? "  [Interface]" : ""));
+                            info.unresolved.add(csf.getDeclaredTarget().getSignature());
+                        }
+                    } else {
+                        if (c != null && WalaUtils.isAppClass(c))
+                            info.callees.add(inv);
+                    }
+                }
+            } catch (InvalidClassFileException e) {
+                logger.error(Utils.stacktrace2Str(e));
+            }
+        }
+    }
+
+
+
+
 /*    private void printSTATS(){
         logger.info("# Processed libs: " + libName2Stats.size());
 
@@ -175,8 +275,9 @@ public class DependencyAnalysis {
                 Set<String> prunedDeps = new TreeSet<String>();
                 for (String dep: s.version2Dependencies.get(v)) {
                     boolean added = false;
+                    PackageName depName = PackageName.of(dep);
                     for (String rp: rootPackages) {
-                        if (dep.startsWith(rp)) {
+                        if (depName.startsWith(PackageName.of(rp))) {
                             added = true;
                             prunedDeps.add(rp);
                             break;
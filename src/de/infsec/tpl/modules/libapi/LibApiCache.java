@@ -0,0 +1,130 @@
+package de.infsec.tpl.modules.libapi;
+
+import de.infsec.tpl.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * On-disk cache of the documented public API per library version.
+ * Entries are keyed by library name, version and the SHA-256 digest of the code package, i.e. a changed jar/aar
+ * for an existing version results in a cache miss. Every entry is a gzipped binary list of {@link ApiSignature}s:
+ * <pre>  &lt;cacheDir&gt;/&lt;libName&gt;/&lt;version&gt;-&lt;digest&gt;.api.gz</pre>
+ */
+class LibApiCache {
+    private static final Logger logger = LoggerFactory.getLogger(LibApiCache.class);
+
+    private static final int MAGIC = 0x4C415049;   // "LAPI"
+    // to be increased whenever the API extraction (filters) or the record format changes
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_EXT = ".api.gz";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final File cacheDir;
+
+
+    LibApiCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+
+    /**
+     * @return  the hex-encoded SHA-256 digest of the file content
+     */
+    static String digest(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) != -1)
+                md.update(buf, 0, read);
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b: md.digest())
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * @return  the cached APIs or null, if there is no (valid) cache entry
+     */
+    Set<ApiSignature> load(String libName, String version, String digest) {
+        File f = getFile(libName, version, digest);
+        if (!f.exists())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(f), BUFFER_SIZE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.debug("Outdated api cache entry: " + f);
+                return null;
+            }
+
+            int count = in.readInt();
+            Set<ApiSignature> apis = new HashSet<ApiSignature>(count * 2);
+            for (int i = 0; i < count; i++)
+                apis.add(ApiSignature.read(in));
+
+            return apis;
+        } catch (IOException e) {
+            logger.warn("Could not read api cache entry " + f + ": " + Utils.stacktrace2Str(e));
+            return null;
+        }
+    }
+
+
+    void store(String libName, String version, String digest, Set<ApiSignature> apis) {
+        File f = getFile(libName, version, digest);
+        if (!f.getParentFile().exists())
+            f.getParentFile().mkdirs();
+
+        // write to tmp file first, such that concurrent/aborted runs never leave partial entries
+        File tmp = null;
+        try {
+            tmp = Files.createTempFile(f.getParentFile().toPath(), f.getName(), ".tmp").toFile();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp), BUFFER_SIZE)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(apis.size());
+                for (ApiSignature api: apis)
+                    api.write(out);
+            }
+
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write api cache entry " + f + ": " + Utils.stacktrace2Str(e));
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+
+    private File getFile(String libName, String version, String digest) {
+        return new File(cacheDir, sanitize(libName) + File.separator + sanitize(version) + "-" + digest + FILE_EXT);
+    }
+
+    private static String sanitize(String str) {
+        return str.replaceAll("[^a-zA-Z0-9._-]", "_");
+    }
+}
@@ -1,12 +1,9 @@
 package de.infsec.tpl.modules.libapi;
 
 import com.github.zafarkhaja.semver.Version;
-import com.ibm.wala.classLoader.IClass;
-import com.ibm.wala.classLoader.IMethod;
 import de.infsec.tpl.stats.Exportable;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.VersionWrapper;
-import de.infsec.tpl.utils.WalaUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +16,7 @@ import java.util.stream.Collectors;
 public class LibApiComparator {
     private static final Logger logger = LoggerFactory.getLogger(LibApiComparator.class);
     private Map<Version, ApiDiff> version2ApiDiff;
+    private LibApiStats stats;
 
 
     /**
@@ -29,9 +27,9 @@ public class LibApiComparator {
         int apiCount;
         VersionWrapper.SEMVER expectedSemver = null;
         VersionWrapper.SEMVER actualSemver = null;
-        Set<IMethod> removed = new HashSet<IMethod>();
-        Set<IMethod> added = new HashSet<IMethod>();
-        Map<IMethod, Set<IMethod>> alternatives = new HashMap<IMethod, Set<IMethod>>();
+        Set<ApiSignature> removed = new HashSet<ApiSignature>();
+        Set<ApiSignature> added = new HashSet<ApiSignature>();
+        Map<ApiSignature, Set<ApiSignature>> alternatives = new HashMap<ApiSignature, Set<ApiSignature>>();
 
         ApiDiff(Version v, int apiCount) {
             this.v = v;
@@ -59,12 +57,12 @@ public class LibApiComparator {
 
             if (verbose) {
                 final int LIMIT = 15;  // print max number of methods
-                removed.stream().map(IMethod::getSignature).sorted().limit(LIMIT).forEach(m -> logger.info(Utils.INDENT2 + "- removed: " + m));
-                for (IMethod m: alternatives.keySet()) {
-                    logger.info(Utils.INDENT2 + "Alternatives for " + m.getSignature());
-                    alternatives.get(m).stream().map(IMethod::getSignature).sorted().forEach(s -> logger.info(Utils.indent(3) + "> alt: " + s));
+                removed.stream().map(ApiSignature::toString).sorted().limit(LIMIT).forEach(m -> logger.info(Utils.INDENT2 + "- removed: " + m));
+                for (ApiSignature m: alternatives.keySet()) {
+                    logger.info(Utils.INDENT2 + "Alternatives for " + m.signature);
+                    alternatives.get(m).stream().map(ApiSignature::toString).sorted().forEach(s -> logger.info(Utils.indent(3) + "> alt: " + s));
                 }
-                added.stream().map(IMethod::getSignature).sorted().limit(LIMIT).forEach(m -> logger.info(Utils.INDENT2 + "+   added: " + m));
+                added.stream().map(ApiSignature::toString).sorted().limit(LIMIT).forEach(m -> logger.info(Utils.INDENT2 + "+   added: " + m));
             }
         }
 
@@ -93,14 +91,14 @@ public class LibApiComparator {
                 actualSemver = diff.actualSemver == null? "" : diff.actualSemver.name();
                 expectedSemver = diff.expectedSemver == null? "" : diff.expectedSemver.name();
 
-                for (IMethod m: diff.alternatives.keySet()) {
-                    Set<String> apis = diff.alternatives.get(m).stream().map(IMethod::getSignature).collect(Collectors.toSet());
-                    alternatives.put(m.getSignature(), apis);
+                for (ApiSignature m: diff.alternatives.keySet()) {
+                    Set<String> apis = diff.alternatives.get(m).stream().map(ApiSignature::toString).collect(Collectors.toSet());
+                    alternatives.put(m.signature, apis);
                 }
 
                 if (verbose) {
-                    apiAdditions = diff.added.stream().map(IMethod::getSignature).sorted().collect(Collectors.toSet());
-                    apiDeletions = diff.removed.stream().map(IMethod::getSignature).sorted().collect(Collectors.toSet());
+                    apiAdditions = diff.added.stream().map(ApiSignature::toString).sorted().collect(Collectors.toSet());
+                    apiDeletions = diff.removed.stream().map(ApiSignature::toString).sorted().collect(Collectors.toSet());
                 }
             }
 
@@ -115,11 +113,12 @@ public class LibApiComparator {
     // need to infer expected and actual semver
     protected Map<Version, ApiDiff> run(LibApiStats stats) {
 
+        this.stats = stats;
         version2ApiDiff = new TreeMap<Version, ApiDiff>();
-        Map<Version, Set<IMethod>> version2Api =  generatePerVersionApiSet(stats);
+        Map<Version, BitSet> version2Api =  generatePerVersionApiSet(stats);
 
         for (Version v: version2Api.keySet()) {
-            version2ApiDiff.put(v, new ApiDiff(v, version2Api.get(v).size()));
+            version2ApiDiff.put(v, new ApiDiff(v, version2Api.get(v).cardinality()));
         }
 
         // infer expected/actual semver
@@ -165,42 +164,38 @@ public class LibApiComparator {
     }
 
 
-    Map<Version, Set<IMethod>> generatePerVersionApiSet(LibApiStats stats) {
-        Map<Version, Set<IMethod>> version2Api = new TreeMap<Version, Set<IMethod>>();
-
-        for (Version v: stats.getVersions()) {
-            Set<IMethod> apis = new HashSet<IMethod>();
-
-            for (IMethod api: stats.api2Versions.keySet()) {
-                if (stats.api2Versions.get(api).contains(v))
-                    apis.add(api);
-            }
+    /**
+     * @return  per version the set of documented API ids (see {@link LibApiStats#getApi(int)})
+     */
+    Map<Version, BitSet> generatePerVersionApiSet(LibApiStats stats) {
+        Map<Version, BitSet> version2Api = new TreeMap<Version, BitSet>();
 
-            version2Api.put(v, apis);
-        }
+        for (Version v: stats.getVersions())
+            version2Api.put(v, stats.getDocumentedApiIds(v));
 
         return version2Api;
     }
 
 
-    void inferActualSemver(Map<Version, Set<IMethod>> version2Api) {
+    void inferActualSemver(Map<Version, BitSet> version2Api) {
         Iterator<Version> it = version2ApiDiff.keySet().iterator();
         Version v0 = it.next();
 
         while (it.hasNext()) {
             Version v1 = it.next();
-            VersionWrapper.SEMVER sem = compareApis(version2Api.get(v0), version2Api.get(v1));
-            version2ApiDiff.get(v1).actualSemver = sem;
 
             // determine added/removed APIs
-            if (!sem.equals(VersionWrapper.SEMVER.PATCH)) {
-                Set<IMethod> removed = new HashSet<IMethod>(version2Api.get(v0));
-                removed.removeAll(version2Api.get(v1));
-                version2ApiDiff.get(v1).removed = removed;
+            BitSet removed = (BitSet) version2Api.get(v0).clone();
+            removed.andNot(version2Api.get(v1));
+            BitSet added = (BitSet) version2Api.get(v1).clone();
+            added.andNot(version2Api.get(v0));
+
+            VersionWrapper.SEMVER sem = compareApis(removed, added);
+            version2ApiDiff.get(v1).actualSemver = sem;
 
-                Set<IMethod> added = new HashSet<IMethod>(version2Api.get(v1));
-                added.removeAll(version2Api.get(v0));
-                version2ApiDiff.get(v1).added = added;
+            if (!sem.equals(VersionWrapper.SEMVER.PATCH)) {
+                version2ApiDiff.get(v1).removed = stats.getApis(removed);
+                version2ApiDiff.get(v1).added = stats.getApis(added);
             }
 
             logger.debug(Utils.INDENT2 + "Actual SemVer:: " + v0.toString() + " : " + v1.toString() + "  ->  " + sem.name());
@@ -212,17 +207,19 @@ public class LibApiComparator {
     /*
      * Check for each major version (actual semver) for alternative
      * APIs for each removed API
-     * NOTE: This is getting really slow if there are 10k+ doc APIs and more than
-     *       1k+ API removals between adjacent versions
+     * Instead of testing every API of the version, only candidates that can possibly
+     * satisfy one of the rules of {@link #isAlternativeApi(ApiSignature, ApiSignature)} are tested
      */
-    void inferAlternativeAPIs(Map<Version, Set<IMethod>> version2Api) {
+    void inferAlternativeAPIs(Map<Version, BitSet> version2Api) {
         for (Version v: version2ApiDiff.keySet()) {
             ApiDiff diff = version2ApiDiff.get(v);
 
             if (diff.actualSemver != null && diff.actualSemver.equals(VersionWrapper.SEMVER.MAJOR)) {
-                for (IMethod m: diff.removed) {
-                    Set<IMethod> alternatives = version2Api.get(v).parallelStream()
-                       .filter(api -> !diff.removed.contains(api))  // exclude removed apis
+                // removed apis are by definition not part of this version
+                AlternativeIndex index = new AlternativeIndex(v, version2Api.get(v));
+
+                for (ApiSignature m: diff.removed) {
+                    Set<ApiSignature> alternatives = index.getCandidates(m).stream()
                        .filter(api -> isAlternativeApi(m, api))
                        .collect(Collectors.toSet());
 
@@ -236,6 +233,39 @@ public class LibApiComparator {
     }
 
 
+    /**
+     * Candidate index over the APIs of one version. All rules require the same declaring class and access flags, and either
+     *   - the same method name (generalized args, prepended/appended arg, changed return type) or
+     *   - the same descriptor (renamed method)
+     */
+    private class AlternativeIndex {
+        private final Map<String, List<ApiSignature>> name2Apis = new HashMap<String, List<ApiSignature>>();
+        private final Map<String, List<ApiSignature>> descriptor2Apis = new HashMap<String, List<ApiSignature>>();
+
+        AlternativeIndex(Version version, BitSet apiIds) {
+            for (int id = apiIds.nextSetBit(0); id >= 0; id = apiIds.nextSetBit(id+1)) {
+                ApiSignature api = stats.getApi(id, version);  // candidates are checked against the type hierarchy of this version
+                name2Apis.computeIfAbsent(nameKey(api), k -> new ArrayList<ApiSignature>()).add(api);
+                descriptor2Apis.computeIfAbsent(descriptorKey(api), k -> new ArrayList<ApiSignature>()).add(api);
+            }
+        }
+
+        Set<ApiSignature> getCandidates(ApiSignature target) {
+            Set<ApiSignature> result = new HashSet<ApiSignature>(name2Apis.getOrDefault(nameKey(target), Collections.emptyList()));
+            result.addAll(descriptor2Apis.getOrDefault(descriptorKey(target), Collections.emptyList()));
+            return result;
+        }
+
+        private String nameKey(ApiSignature api) {
+            return api.declaringClass + ":" + api.accessFlags + ":" + api.name;
+        }
+
+        private String descriptorKey(ApiSignature api) {
+            return api.declaringClass + ":" + api.accessFlags + ":" + api.descriptor;
+        }
+    }
+
+
     /**
      * Check for alternative APIs in case an API is no longer available in new library version
      * Tests include
@@ -248,18 +278,18 @@ public class LibApiComparator {
      * @param test
      * @return
      */
-    protected static boolean isAlternativeApi(IMethod target, IMethod test) {
+    protected static boolean isAlternativeApi(ApiSignature target, ApiSignature test) {
         // Test2
         if (isApiCompatible(target, test))
             return true;
 
         // check whether both APIs reside in the same code Package/Class
-        if (! WalaUtils.simpleName(target.getDeclaringClass()).equals(WalaUtils.simpleName(test.getDeclaringClass())))
+        if (! target.declaringClass.equals(test.declaringClass))
             return false;
 
         // check for changes in access specifier
-        if (JvmMethodAccessFlags.getMethodAccessCode(target) != JvmMethodAccessFlags.getMethodAccessCode(test)) {
-            logger.trace("Access Flags incompatible: old: " + JvmMethodAccessFlags.flags2Str(target) + "   new: " + JvmMethodAccessFlags.flags2Str(test));
+        if (target.accessFlags != test.accessFlags) {
+            logger.trace("Access Flags incompatible: old: " + JvmMethodAccessFlags.flags2Str(target.accessFlags) + "   new: " + JvmMethodAccessFlags.flags2Str(test.accessFlags));
             return false;
         }
 
@@ -268,24 +298,24 @@ public class LibApiComparator {
         //   - constructors can't be an alternative to non-constructors
         //   - at least one argument  (still fuzzy for methods with one primitive/String arg)
         // TODO:  at least one non-framework arg || at least two prim/framework args
-        if (! WalaUtils.getName(target).equals(WalaUtils.getName(test))) {
-            int numberOfArgs = target.getNumberOfParameters() - (target.isStatic()? 0 : 1);
+        if (! target.name.equals(test.name)) {
+            int numberOfArgs = target.getNumberOfParameters() - (target.isStatic? 0 : 1);
 
-            return target.getDescriptor().toString().equals(test.getDescriptor().toString()) &&
+            return target.descriptor.equals(test.descriptor) &&
                     numberOfArgs > 0 &&
-                    (!WalaUtils.getName(target).equals("<init>")) &&
-                    (!WalaUtils.getName(test).equals("<init>"));
+                    (!target.name.equals("<init>")) &&
+                    (!test.name.equals("<init>"));
         }
 
         // Test3: introduction of new argument at first/last position
-        if (WalaUtils.getName(target).equals(WalaUtils.getName(test)) &&   // same method name
-            (target.getReturnType().toString().equals(test.getReturnType().toString())) &&   // same return type
+        if (target.name.equals(test.name) &&   // same method name
+            (target.returnType.equals(test.returnType)) &&   // same return type
             (target.getNumberOfParameters() == test.getNumberOfParameters()-1)) {  // one more arg
 
             // check if new arg was prepended
             boolean check = true;
-            for (int i = (target.isStatic()? 0 : 1); i < target.getNumberOfParameters(); i++) {
-                if (!target.getParameterType(i).getName().toString().equals(test.getParameterType(i+1).getName().toString())) {
+            for (int i = (target.isStatic? 0 : 1); i < target.getNumberOfParameters(); i++) {
+                if (!target.getParameterTypeName(i).equals(test.getParameterTypeName(i+1))) {
                     check = false;
                     break;
                 }
@@ -295,8 +325,8 @@ public class LibApiComparator {
 
             // check if new arg was appended
             check = true;
-            for (int i = (target.isStatic()? 0 : 1); i < target.getNumberOfParameters(); i++) {
-                if (!target.getParameterType(i).getName().toString().equals(test.getParameterType(i).getName().toString())) {
+            for (int i = (target.isStatic? 0 : 1); i < target.getNumberOfParameters(); i++) {
+                if (!target.getParameterTypeName(i).equals(test.getParameterTypeName(i))) {
                     check = false;
                     break;
                 }
@@ -306,14 +336,14 @@ public class LibApiComparator {
         }
 
         // Test4: same arg list: different return type
-        if (WalaUtils.getName(target).equals(WalaUtils.getName(test)) &&   // same method name
-            (!target.getReturnType().toString().equals(test.getReturnType().toString())) &&   // different return type
+        if (target.name.equals(test.name) &&   // same method name
+            (!target.returnType.equals(test.returnType)) &&   // different return type
             (target.getNumberOfParameters() == test.getNumberOfParameters())) {  // same number of args
 
             // check that all arg types are equal
             boolean equal = true;
-            for (int i = (target.isStatic()? 0 : 1); i < target.getNumberOfParameters(); i++) {
-                if (!target.getParameterType(i).getName().toString().equals(test.getParameterType(i).getName().toString())) {
+            for (int i = (target.isStatic? 0 : 1); i < target.getNumberOfParameters(); i++) {
+                if (!target.getParameterTypeName(i).equals(test.getParameterTypeName(i))) {
                     equal = false;
                     break;
                 }
@@ -331,51 +361,49 @@ public class LibApiComparator {
      * This checks whether method name/return type are the same but one or more argument types have been generalized
      * (e.g. ArrayList to List|Collection
      */
-    protected static boolean isApiCompatible(IMethod target, IMethod test) {
+    protected static boolean isApiCompatible(ApiSignature target, ApiSignature test) {
         // check whether both APIs reside in the same code Package/Class
-        if (! WalaUtils.simpleName(target.getDeclaringClass()).equals(WalaUtils.simpleName(test.getDeclaringClass())))
+        if (! target.declaringClass.equals(test.declaringClass))
             return false;
 
         // check for changes in access specifier
-        if (JvmMethodAccessFlags.getMethodAccessCode(target) != JvmMethodAccessFlags.getMethodAccessCode(test)) {
-            logger.trace("Access Flags incompatible: old: " + JvmMethodAccessFlags.flags2Str(target) + "   new: " + JvmMethodAccessFlags.flags2Str(test));
+        if (target.accessFlags != test.accessFlags) {
+            logger.trace("Access Flags incompatible: old: " + JvmMethodAccessFlags.flags2Str(target.accessFlags) + "   new: " + JvmMethodAccessFlags.flags2Str(test.accessFlags));
             return false;
         }
 
         // check whether method name changed
-        if (! WalaUtils.getName(target).equals(WalaUtils.getName(test))) {
+        if (! target.name.equals(test.name)) {
             return false;
         }
 
         // if method name changed, check whether non primitive arguments were generified
         //   - first check wether return types are the same
-        if (! target.getReturnType().toString().equals(test.getReturnType().toString()))
+        if (! target.returnType.equals(test.returnType))
             return false;
 
         //   - check argument types for generalization, i.e. when a ArrayList argument was changed to List
         if (target.getNumberOfParameters() == test.getNumberOfParameters()) {
-            for (int i = (target.isStatic()? 0 : 1); i < target.getNumberOfParameters(); i++) {
-                if (!target.getParameterType(i).toString().equals(test.getParameterType(i).toString())) {
+            for (int i = (target.isStatic? 0 : 1); i < target.getNumberOfParameters(); i++) {
+                if (!target.getParameterType(i).equals(test.getParameterType(i))) {
                     // skip primitive types
-                    if (test.getParameterType(i).isPrimitiveType()) return false;
+                    if (test.isPrimitiveParameter(i)) return false;
 
                     // check if test argument type is supertype
-                    IClass paramTestClazz = test.getDeclaringClass().getClassHierarchy().lookupClass(test.getParameterType(i));
+                    String[] superClazzes = test.getParameterSuperClasses(i);
 
                     // could be null because it's a type of a different library (sub-dependency) that is not part of the cha
-                    if (paramTestClazz == null) {
+                    if (superClazzes == null) {
                         logger.warn("Could not lookup superclazz (maybe sub-dependency):");
-                        logger.warn(Utils.INDENT + "target param type: " + target.getParameterType(i).getName().toString());
-                        logger.warn(Utils.INDENT + "test param type  : " + test.getParameterType(i).getName().toString());
+                        logger.warn(Utils.INDENT + "target param type: " + target.getParameterTypeName(i));
+                        logger.warn(Utils.INDENT + "test param type  : " + test.getParameterTypeName(i));
 
                         return false;
                     }
 
-                    List<IClass> superClazzes = WalaUtils.getSuperClasses(paramTestClazz);
-
                     boolean found = false;
-                    for (IClass ic: superClazzes) {
-                        if (WalaUtils.simpleName(target.getDeclaringClass()).equals(WalaUtils.simpleName(ic))) {
+                    for (String ic: superClazzes) {
+                        if (target.declaringClass.equals(ic)) {
                             found = true;
                             break;
                         }
@@ -393,17 +421,21 @@ public class LibApiComparator {
     }
 
 
-    // IMethod test as IMethod objects stem from different IClassHierarchies
-    protected static boolean equals(IMethod m1, IMethod m2) {
-        return m1.getSignature().equals(m2.getSignature()) &&
-                JvmMethodAccessFlags.getMethodAccessCode(m1) == JvmMethodAccessFlags.getMethodAccessCode(m2);
+    // APIs of different versions are compared by signature and access flags
+    protected static boolean equals(ApiSignature m1, ApiSignature m2) {
+        return m1.signature.equals(m2.signature) &&
+                m1.accessFlags == m2.accessFlags;
     }
 
-    protected static VersionWrapper.SEMVER compareApis(Set<IMethod> s0, Set<IMethod> s1) {
-        if (s1.containsAll(s0)) {
-            if (s0.size() == s1.size())   // exact match
+    /**
+     * @param removed  ids of APIs that are no longer available in the new version
+     * @param added  ids of APIs that were introduced with the new version
+     */
+    protected static VersionWrapper.SEMVER compareApis(BitSet removed, BitSet added) {
+        if (removed.isEmpty()) {
+            if (added.isEmpty())   // exact match
                 return VersionWrapper.SEMVER.PATCH;
-            else if (s1.size() > s0.size())  // contains complete set of APIs and additions -> backwards-compatible
+            else  // contains complete set of APIs and additions -> backwards-compatible
                 return VersionWrapper.SEMVER.MINOR;
         }
         return VersionWrapper.SEMVER.MAJOR;
@@ -1,8 +1,6 @@
 package de.infsec.tpl.modules.libapi;
 
 import com.github.zafarkhaja.semver.Version;
-import com.ibm.wala.classLoader.IMethod;
-import de.infsec.tpl.config.LibScoutConfig;
 import de.infsec.tpl.stats.Exportable;
 import de.infsec.tpl.utils.VersionWrapper;
 
@@ -18,8 +16,15 @@ public class LibApiStats implements Exportable {
     // set of version strings
     private Set<Version> versions;
 
-    // maps documented API signatures to list of library versions including them
-    public Map<IMethod, Set<Version>> api2Versions;
+    // documented API signatures interned to ids (index in list)
+    private List<ApiSignature> apis;
+    private Map<ApiSignature, Integer> api2Id;
+
+    // maps versions to the set of documented API ids it includes
+    private TreeMap<Version, BitSet> version2Apis;
+
+    // per version the API records whose parameter super classes differ from the interned record (type hierarchies can change across versions)
+    private Map<Version, Map<Integer, ApiSignature>> version2ApiVariants;
 
     public Map<Version, LibApiComparator.ApiDiff> version2Diff;
 
@@ -45,12 +50,14 @@ public class LibApiStats implements Exportable {
 
             this.apiDiffs = stats.version2Diff.values().stream().map(LibApiComparator.ApiDiff::export).collect(Collectors.toList());
 
-            if (LibScoutConfig.libDependencyAnalysis)
+            if (stats.version2Deps != null)  // only set if dependency analysis was enabled
                 this.libDeps = stats.version2Deps.values().stream().map(DependencyAnalysis.LibDependencies::export).collect(Collectors.toList());
 
             this.api2Versions = new HashMap<>();
-            for (IMethod m: stats.api2Versions.keySet()) {
-                this.api2Versions.put(m.getSignature(), stats.api2Versions.get(m).stream().map(Version::toString).collect(Collectors.toList()));
+            for (Version v: stats.version2Apis.keySet()) {
+                BitSet bits = stats.version2Apis.get(v);
+                for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id+1))
+                    this.api2Versions.computeIfAbsent(stats.apis.get(id).signature, k -> new ArrayList<>()).add(v.toString());
             }
         }
     }
@@ -64,7 +71,10 @@ public class LibApiStats implements Exportable {
 
     public LibApiStats(String libName) {
         this.libName = libName;
-        this.api2Versions = new HashMap<>();
+        this.apis = new ArrayList<>();
+        this.api2Id = new HashMap<>();
+        this.version2Apis = new TreeMap<>();
+        this.version2ApiVariants = new HashMap<>();
         this.versions = new TreeSet<>();
     }
 
@@ -81,17 +91,59 @@ public class LibApiStats implements Exportable {
 	    return versions;
     }
 
-    void setDocumentedAPIs(String version, Set<IMethod> docAPIs) {
-        for (IMethod api: docAPIs) {
-            if (!api2Versions.containsKey(api))
-                api2Versions.put(api, new TreeSet<Version>());
+    void setDocumentedAPIs(String version, Set<ApiSignature> docAPIs) {
+        Version ver = VersionWrapper.valueOf(version);
+        BitSet bits = version2Apis.computeIfAbsent(ver, v -> new BitSet());
+
+        for (ApiSignature api: docAPIs) {
+            Integer id = api2Id.get(api);
+            if (id == null) {
+                id = apis.size();
+                apis.add(api);
+                api2Id.put(api, id);
+            } else if (!apis.get(id).hasSameParameterSuperClasses(api)) {
+                version2ApiVariants.computeIfAbsent(ver, v -> new HashMap<>()).put(id, api);
+            }
 
-            api2Versions.get(api).add(VersionWrapper.valueOf(version));
+            bits.set(id);
         }
     }
 
-    Set<IMethod> getDocumentedAPIs(Version version) {
-        return api2Versions.keySet().stream().filter(m -> api2Versions.get(m).contains(version)).collect(Collectors.toSet());
+    /**
+     * @return  the ids of all documented APIs of the given version (see {@link #getApi(int)}). Must not be modified.
+     */
+    BitSet getDocumentedApiIds(Version version) {
+        return version2Apis.containsKey(version)? version2Apis.get(version) : new BitSet();
+    }
+
+    ApiSignature getApi(int id) {
+        return apis.get(id);
+    }
+
+    /**
+     * @return  the API with the given id as documented in the given version, i.e. with the parameter super classes of this version
+     */
+    ApiSignature getApi(int id, Version version) {
+        Map<Integer, ApiSignature> variants = version2ApiVariants.get(version);
+        ApiSignature api = variants == null? null : variants.get(id);
+        return api != null? api : apis.get(id);
+    }
+
+    int getApiCount() {
+        return apis.size();
+    }
+
+    Set<ApiSignature> getApis(BitSet ids) {
+        Set<ApiSignature> result = new HashSet<>(ids.cardinality() * 2);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id+1))
+            result.add(apis.get(id));
+        return result;
+    }
+
+    void setDependencies(DependencyAnalysis.LibDependencies deps) {
+        if (version2Deps == null)
+            version2Deps = new TreeMap<>();
+        version2Deps.put(deps.version, deps);
     }
 
 
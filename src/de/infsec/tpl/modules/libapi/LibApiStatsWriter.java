@@ -0,0 +1,118 @@
+package de.infsec.tpl.modules.libapi;
+
+import com.github.zafarkhaja.semver.Version;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Streams {@link LibApiStats} as json directly from the underlying structures, i.e. without creating
+ * a {@link LibApiStats.Export} copy first. The output format is the same as for the export, such that
+ * it can still be read as {@link LibApiStats.Export} (see also {@link de.infsec.tpl.modules.updatability.LibApiCompatIndex}).
+ */
+class LibApiStatsWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Gson gson = new GsonBuilder().create();
+
+
+    void write(LibApiStats stats, File jsonFile) throws IOException {
+        File basePath = jsonFile.getParentFile();
+        if (basePath != null && !basePath.exists()) basePath.mkdirs();
+
+        try (JsonWriter out = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+            out.setHtmlSafe(true);  // same escaping as Gson#toJson
+            out.beginObject();
+            out.name("libName").value(stats.libName);
+
+            out.name("versions").beginArray();
+            for (Version v: stats.getVersions())
+                out.value(v.toString());
+            out.endArray();
+
+            writeApiDiffs(stats, out);
+
+            if (stats.version2Deps != null)  // only set if dependency analysis was enabled
+                writeDependencies(stats, out);
+
+            writeApi2Versions(stats, out);
+            out.endObject();
+        }
+    }
+
+
+    private void writeApiDiffs(LibApiStats stats, JsonWriter out) throws IOException {
+        out.name("apiDiffs").beginArray();
+        for (LibApiComparator.ApiDiff diff: stats.version2Diff.values())
+            gson.toJson(diff.export(), LibApiComparator.ApiDiff.Export.class, out);
+        out.endArray();
+    }
+
+
+    private void writeDependencies(LibApiStats stats, JsonWriter out) throws IOException {
+        out.name("libDeps").beginArray();
+        for (DependencyAnalysis.LibDependencies deps: stats.version2Deps.values()) {
+            out.beginObject();
+            out.name("version").value(deps.version.toString());
+
+            out.name("api2Dependencies").beginObject();
+            for (String api: deps.api2Dependencies.keySet()) {
+                out.name(api).beginArray();
+                for (String dep: deps.api2Dependencies.get(api))
+                    out.value(dep);
+                out.endArray();
+            }
+            out.endObject();
+
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+
+    /*
+     * maps documented API signatures to list of library versions including them (in ascending order)
+     */
+    private void writeApi2Versions(LibApiStats stats, JsonWriter out) throws IOException {
+        List<String> versions = new ArrayList<String>();
+        List<BitSet> versionApis = new ArrayList<BitSet>();
+        for (Version v: stats.getVersions()) {
+            versions.add(v.toString());
+            versionApis.add(stats.getDocumentedApiIds(v));
+        }
+
+        // write in signature order for reproducible output, APIs with the same signature
+        // but different access flags (in different versions) are merged into one entry
+        Map<String, List<Integer>> sig2Ids = new TreeMap<String, List<Integer>>();
+        for (int id = 0; id < stats.getApiCount(); id++)
+            sig2Ids.computeIfAbsent(stats.getApi(id).signature, k -> new ArrayList<Integer>(1)).add(id);
+
+        out.name("api2Versions").beginObject();
+        for (String sig: sig2Ids.keySet()) {
+            out.name(sig).beginArray();
+            for (int i = 0; i < versions.size(); i++) {
+                for (int id: sig2Ids.get(sig)) {
+                    if (versionApis.get(i).get(id)) {
+                        out.value(versions.get(i));
+                        break;
+                    }
+                }
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+}
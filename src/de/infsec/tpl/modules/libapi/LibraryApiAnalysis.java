@@ -3,17 +3,17 @@ package de.infsec.tpl.modules.libapi;
 
 import com.ibm.wala.classLoader.IMethod;
 
-import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
-import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
 import de.infsec.tpl.TplCLI;
-import de.infsec.tpl.config.LibScoutConfig;
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.profile.LibraryDescription;
-import de.infsec.tpl.utils.AarFile;
 import de.infsec.tpl.utils.Utils;
+import de.infsec.tpl.utils.VersionWrapper;
+import de.infsec.tpl.utils.WalaUtils;
 import de.infsec.tpl.xml.XMLParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,7 +21,12 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.jar.JarFile;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
 
 
 /**
@@ -41,18 +46,31 @@ public class LibraryApiAnalysis {
 
     private Map<String, LibApiStats> libName2Stats = new HashMap<String, LibApiStats>();
 
+    private final AnalysisContext ctx;
 
-    public static void run(File libDir) {
-        new LibraryApiAnalysis(libDir);
+    // heap estimate for parsing a single library version (class hierarchy + API extraction)
+    private static final int MIN_MEM_PER_LIB_MB = 64;
+    private static final int MEM_PER_CODE_BYTE = 40;
+
+    private final DependencyAnalysis depAnalysis = new DependencyAnalysis();
+
+    // on-disk cache of extracted APIs per library version, null if disabled
+    private final LibApiCache apiCache;
+
+
+    public static void run(AnalysisContext ctx, File libDir) {
+        new LibraryApiAnalysis(ctx, libDir);
     }
 
 
-    private LibraryApiAnalysis(File libDir) {
+    private LibraryApiAnalysis(AnalysisContext ctx, File libDir) {
+        this.ctx = ctx;
+        this.apiCache = ctx.libApiCacheDir != null? new LibApiCache(ctx.libApiCacheDir) : null;
         locateLibrarySDKs(libDir);
         parseLibrarySDKs(true);
 
-        if (LibScoutConfig.libDependencyAnalysis)
-            analyzeSecondaryDependencies();
+        if (ctx.libDependencyAnalysis)
+            printSecondaryDependencies();
 
         analyzeLibraryAPIs();
 
@@ -69,12 +87,10 @@ public class LibraryApiAnalysis {
         }
     }
 
-    private void analyzeSecondaryDependencies() {
-        DependencyAnalysis dp = new DependencyAnalysis();
-
+    private void printSecondaryDependencies() {
         for (LibApiStats lib: libName2Stats.values()) {
-            logger.info("- Analyze secondary deps: " + lib.libName);
-            lib.version2Deps = dp.run(lib);
+            if (lib.version2Deps != null)
+                depAnalysis.printDependencies(lib, ctx.asciiRendering);
         }
     }
 
@@ -82,10 +98,10 @@ public class LibraryApiAnalysis {
 
     private void writeLibData(LibApiStats stats) {
         // output results in json format
-        File jsonOutputFile = new File(LibScoutConfig.jsonDir + File.separator + "libApis" + File.separator + stats.libName + ".json");
+        File jsonOutputFile = new File(ctx.jsonDir + File.separator + "libApis" + File.separator + stats.libName + ".json");
 
         try {
-            Utils.obj2JsonFile(jsonOutputFile, stats.export());
+            new LibApiStatsWriter().write(stats, jsonOutputFile);
             logger.info("Results for library: " + stats.libName + " written to " + jsonOutputFile);
         } catch (IOException e) {
             logger.warn("Could not write json results: " + Utils.stacktrace2Str(e));
@@ -93,53 +109,112 @@ public class LibraryApiAnalysis {
     }
 
 
+    /**
+     * Library versions are parsed in parallel by a fixed-size pool (see {@link AnalysisContext#libApiThreads}).
+     * Since a class hierarchy per version can be large, every task additionally reserves an estimate of its
+     * heap usage (derived from the code package size) from a shared budget before building it.
+     */
     private void parseLibrarySDKs(boolean skipBeta) {
+        int nThreads = ctx.libApiThreads > 0? ctx.libApiThreads : Runtime.getRuntime().availableProcessors();
+        int memBudgetMB = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 * 3 >> 20);
+        Semaphore memBudget = new Semaphore(memBudgetMB, true);
+        logger.info("Parse " + meta2Code.size() + " library versions (threads: " + nThreads + ", heap budget: " + memBudgetMB + " MB)");
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
         for (File libXML : meta2Code.keySet()) {
-            try {
-                LibraryDescription ld = XMLParser.readLibraryXML(libXML);
+            futures.add(pool.submit(() -> parseLibrarySDK(libXML, skipBeta, memBudget, memBudgetMB)));
+        }
+        pool.shutdown();
 
-                if (ld.version.matches(".*[a-zA-Z-]+.*") && skipBeta) {  // skip alpha/beta/rc ..
-                    logger.info("Skip lib: " + ld.name + "   version: " + ld.version);
-                    continue;
+        try {
+            for (Future<?> f: futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    logger.warn(Utils.stacktrace2Str(e));
                 }
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void parseLibrarySDK(File libXML, boolean skipBeta, Semaphore memBudget, int memBudgetMB) {
+        try {
+            LibraryDescription ld = XMLParser.readLibraryXML(libXML);
+
+            if (ld.version.matches(".*[a-zA-Z-]+.*") && skipBeta) {  // skip alpha/beta/rc ..
+                logger.info("Skip lib: " + ld.name + "   version: " + ld.version);
+                return;
+            }
 
-                logger.info("- Parse lib: " + ld.name + "   version: " + ld.version);
+            logger.info("- Parse lib: " + ld.name + "   version: " + ld.version);
 
+            LibApiStats stats;
+            synchronized (libName2Stats) {
                 // if stats file not existing add new one
                 if (!libName2Stats.containsKey(ld.name))
                     libName2Stats.put(ld.name, new LibApiStats(ld.name));
 
-                libName2Stats.get(ld.name).addVersion(ld.version);
+                stats = libName2Stats.get(ld.name);
+                stats.addVersion(ld.version);
+            }
+
+            File libCode = meta2Code.get(libXML);
+            String digest = apiCache != null? LibApiCache.digest(libCode) : null;
+
+            // lookup cached API (the dependency analysis requires the code, thus always parse in this case)
+            Set<ApiSignature> docAPIs = apiCache != null && !ctx.libDependencyAnalysis? apiCache.load(ld.name, ld.version, digest) : null;
+            if (docAPIs != null) {
+                synchronized (libName2Stats) {
+                    stats.setDocumentedAPIs(ld.version, docAPIs);
+                }
+                logger.info(Utils.INDENT + "- " + ld.name + " (" + ld.version + "): " + docAPIs.size() + " documented public APIs  [cached]");
+                return;
+            }
+
+            // extract public documented API
+            int memMB = (int) Math.min(memBudgetMB, Math.max(MIN_MEM_PER_LIB_MB, (libCode.length() * MEM_PER_CODE_BYTE) >> 20));
+            DependencyAnalysis.LibDependencies deps = null;
+
+            // the class hierarchy is only reachable within this block, i.e. it can be released after extraction
+            memBudget.acquire(memMB);
+            try {
+                IClassHierarchy cha = createClassHierarchy(libCode);
+                Set<IMethod> docMethods = PublicInterfaceExtractor.getDocumentedPublicInterface(cha);
 
-                // extract public documented API
-                IClassHierarchy cha = createClassHierarchy(meta2Code.get(libXML));
-                Set<IMethod> docAPIs = PublicInterfaceExtractor.getDocumentedPublicInterface(cha);
-                libName2Stats.get(ld.name).setDocumentedAPIs(ld.version, docAPIs);
-                logger.info(Utils.INDENT + "- " + docAPIs.size() + " documented public APIs");
+                Map<TypeReference, String[]> superClassCache = new HashMap<TypeReference, String[]>();
+                docAPIs = docMethods.stream().map(m -> ApiSignature.of(m, superClassCache)).collect(Collectors.toSet());
 
-            } catch (Exception e) {
-                logger.warn(Utils.stacktrace2Str(e));
+                if (ctx.libDependencyAnalysis)
+                    deps = depAnalysis.run(ld.name, VersionWrapper.valueOf(ld.version), docMethods);
+            } finally {
+                memBudget.release(memMB);
             }
+
+            if (apiCache != null)
+                apiCache.store(ld.name, ld.version, digest, docAPIs);
+
+            synchronized (libName2Stats) {
+                stats.setDocumentedAPIs(ld.version, docAPIs);
+                if (deps != null)
+                    stats.setDependencies(deps);
+            }
+            logger.info(Utils.INDENT + "- " + ld.name + " (" + ld.version + "): " + docAPIs.size() + " documented public APIs");
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn(Utils.stacktrace2Str(e));
         }
     }
 
     private IClassHierarchy createClassHierarchy(File libCodeFile)  throws ClassHierarchyException, IOException, ClassNotFoundException {
-        // create analysis scope and generate class hierarchy
-        final AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
-
-        JarFile jf = libCodeFile.getName().endsWith(".aar")? new AarFile(libCodeFile).getJarFile() : new JarFile((libCodeFile));
-        scope.addToScope(ClassLoaderReference.Application, jf);
-        scope.addToScope(ClassLoaderReference.Primordial, new JarFile(LibScoutConfig.pathToAndroidJar));
-        IClassHierarchy cha = ClassHierarchyFactory.makeWithRoot(scope);
-
-        // cleanup tmp files if library input was an .aar file
-        if (libCodeFile.getName().endsWith(".aar")) {
-            File tmpJar = new File(jf.getName());
-            tmpJar.delete();
-            logger.trace(Utils.indent() + "tmp jar-file deleted at " + tmpJar.getName());
-        }
-
-        return cha;
+        // the library classes are read in-memory, hence there are neither tmp files shared between threads
+        // nor open file handles once the class hierarchy is released
+        return ClassHierarchyFactory.makeWithRoot(WalaUtils.createLibraryScope(libCodeFile, ctx.pathToAndroidJar));
     }
 
 
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.libmatch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import de.infsec.tpl.config.AnalysisContext;
+import de.infsec.tpl.hashtree.HashTree;
+import de.infsec.tpl.hashtree.HashUtils;
+import de.infsec.tpl.profile.LibProfile;
+import de.infsec.tpl.utils.ApkContainer;
+import de.infsec.tpl.utils.Utils;
+
+
+/**
+ * Store of app results (json exports) keyed by the code of the app, such that re-uploads or repacks
+ * with identical classes*.dex entries do not have to be analyzed again:
+ * <pre>  &lt;dir&gt;/&lt;digest[0..1]&gt;/&lt;digest&gt;.json</pre>
+ * The digest covers the dex entries (zip CRCs and sizes, or optionally their content), the manifest
+ * package name (app packages below it are excluded from partial matching) as well as the root hashes
+ * of the loaded profiles and matching options the results were computed with.
+ */
+class DexResultCache {
+	private static final Logger logger = LoggerFactory.getLogger(DexResultCache.class);
+
+	// to be increased whenever the digest input or the json export changes
+	private static final int FORMAT_VERSION = 3;
+	private static final String FILE_EXT = ".json";
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final File dir;
+	private final Gson gson = new Gson();
+
+
+	DexResultCache(File dir) {
+		this.dir = dir;
+	}
+
+
+	/**
+	 * Computes the code digest of an app. Without <i>contentDigest</i> only the central directory is used,
+	 * i.e. the dex entries are not decompressed.
+	 * @param apk  the opened app
+	 * @param ctx  the analysis context (matching options and digest mode)
+	 * @param appPackageName  the package name declared in the manifest
+	 * @param profiles  the library profiles the app is matched against
+	 * @return  the hex-encoded SHA-256 digest or null, if the app does not have any dex entries
+	 */
+	static String digest(ApkContainer apk, AnalysisContext ctx, String appPackageName, List<LibProfile> profiles) throws IOException {
+		if (apk.getDexEntries().isEmpty())
+			return null;
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			update(md, "v" + FORMAT_VERSION + ":" + ctx.noPartialMatching + ":" + ctx.runLibUsageAnalysis + ":" + ctx.showComments);
+			update(md, String.valueOf(appPackageName));
+
+			// profile set by the root hashes of their hash trees, i.e. re-generated profiles with the same
+			// name and version invalidate the stored results (independent of the load order)
+			TreeSet<String> libs = new TreeSet<String>();
+			for (LibProfile p: profiles) {
+				StringBuilder sb = new StringBuilder(p.description.name + ":" + p.description.version);
+				for (HashTree ht: p.hashTrees)
+					sb.append(":").append(HashUtils.hash2Str(ht.getRootHash()));
+				libs.add(sb.toString());
+			}
+			for (String lib: libs)
+				update(md, lib);
+
+			for (ZipEntry e: apk.getDexEntries()) {
+				update(md, e.getName());
+
+				if (ctx.dexContentDigest) {
+					try (InputStream is = apk.getInputStream(e)) {
+						byte[] buf = new byte[BUFFER_SIZE];
+						int read;
+						while ((read = is.read(buf)) != -1)
+							md.update(buf, 0, read);
+					}
+				} else {
+					if (e.getCrc() == -1 || e.getSize() == -1)
+						return null;
+					update(md, e.getCrc() + ":" + e.getSize());
+				}
+			}
+
+			StringBuilder sb = new StringBuilder();
+			for (byte b: md.digest())
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static void update(MessageDigest md, String str) {
+		md.update(str.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+	}
+
+
+	/**
+	 * @return  the stored json export or null, if there is no (valid) result for this digest
+	 */
+	JsonObject load(String digest) {
+		File f = getFile(digest);
+		if (!f.exists())
+			return null;
+
+		try (Reader reader = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+			return gson.fromJson(reader, JsonObject.class);
+		} catch (IOException | JsonParseException e) {
+			logger.warn("Could not read stored app result " + f + ": " + Utils.stacktrace2Str(e));
+			return null;
+		}
+	}
+
+
+	void store(String digest, Object export) {
+		File f = getFile(digest);
+		if (!f.getParentFile().exists())
+			f.getParentFile().mkdirs();
+
+		// write to tmp file first, such that aborted runs never leave partial results
+		File tmp = null;
+		try {
+			tmp = Files.createTempFile(f.getParentFile().toPath(), f.getName(), ".tmp").toFile();
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+				gson.toJson(export, writer);
+			}
+
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Could not store app result " + f + ": " + Utils.stacktrace2Str(e));
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+
+	private File getFile(String digest) {
+		return new File(dir, digest.substring(0, 2) + File.separator + digest + FILE_EXT);
+	}
+}
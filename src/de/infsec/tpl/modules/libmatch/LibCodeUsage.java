@@ -15,9 +15,9 @@
 
 package de.infsec.tpl.modules.libmatch;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +26,7 @@ import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.CodeScanner;
@@ -35,7 +36,9 @@ import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
 
 import de.infsec.tpl.hash.AccessFlags;
+import de.infsec.tpl.hashtree.node.PackageNode;
 import de.infsec.tpl.profile.ProfileMatch;
+import de.infsec.tpl.profile.ProfileMatch.HTreeMatch;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
 
@@ -43,16 +46,11 @@ import de.infsec.tpl.utils.WalaUtils;
 /**
  *  Library Code Usage Analysis
  *  Checks which library code is used by the application in terms of API calls
- *  To this end, for each full match (partial matches are excluded) it is checked which calls are used within
- *  the code base that does not belong the identified library root package name.
+ *  To this end, for each full or partial match it is checked which calls are used within
+ *  the code base that does not belong to the packages matched by the library.
  */
 public class LibCodeUsage {
 	private static final Logger logger = LoggerFactory.getLogger(LibCodeUsage.class);
-	
-	
-	// TODO
-	// how to deal with libs with ambiguous root pckg (currently excluded)
-	//  -> need to check all matched package name for such libs
 
 
 	public static void checkUsage(final IClassHierarchy cha, final List<ProfileMatch> results) {
@@ -61,106 +59,66 @@ public class LibCodeUsage {
 		long starttime = System.currentTimeMillis();
 
 		// get unique libraries (multiple lib versions with an exact match have the same API, thus checking only one of them suffices)
+		// for partially matched libs the version with the highest similarity score is analyzed
 		final HashMap<String,ProfileMatch> lib2Profile = new HashMap<String,ProfileMatch>();  // libname -> profile
-		final HashMap<String,String> rootPckg2Lib = new HashMap<String,String>();   // root package -> libname
-
 		for (ProfileMatch pm: results) {
-			if (!pm.doAllConfigsMatch()) continue;
-			
+			if (!pm.isMatch() && !pm.isPartialMatch()) continue;
+
 			String libName = pm.lib.description.name;
-			if (!lib2Profile.containsKey(libName)) {
+			if (!lib2Profile.containsKey(libName) || isBetterMatch(pm, lib2Profile.get(libName))) {
 				lib2Profile.put(libName, pm);
 			}
-			
-			String rootPckg = pm.getMatchedPackageTree().getRootPackage();
-			
-			// TODO: currently exclude libs with ambiguous root packages
-			if (!LibraryIdentifier.ambiguousRootPackages.contains(rootPckg) && !rootPckg2Lib.containsKey(rootPckg)) {
-				rootPckg2Lib.put(rootPckg, libName);
-
-			}
 		}
-		
+
 		// shortcut - if there are no lib matches there is no need to walk over the bytecode
 		if (lib2Profile.isEmpty()) {
 			logger.info(Utils.INDENT + ">> lib code usage analysis done - No libraries matched to scan for (" + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - starttime) + ")");
 			return;
 		}
-		
-		// scan code once
-		// library root package -> signature, access specifier
-		Map<String, TreeMap<String, Integer>> usedMethods = new TreeMap<String, TreeMap<String, Integer>>();
-		Map<String, Set<String>> unresolvableMethods = new TreeMap<String, Set<String>>();
-		
-		// iterate all classes
-		for (IClass clazz: cha) {
-			if (!WalaUtils.isAppClass(clazz)) continue;
-			
-			// iterate all methods
-			for (IMethod im: clazz.getDeclaredMethods()) {
-				if (im.isAbstract() || im.isNative()) continue;
 
-				try { 
-					// iterate all call sites
-					for (CallSiteReference csr: CodeScanner.getCallSites(im)) {
-						
-						for (String rootPckg: rootPckg2Lib.keySet()) {
-							if (csr.getDeclaredTarget().getSignature().startsWith(rootPckg) && !WalaUtils.simpleName(im.getDeclaringClass()).startsWith(rootPckg)) {
-	//TODO how to store? extend DB? flag whether usage was found in app dev code (based on (fractions of) package name) or other lib code?  we could also classify by using matched lib packages								
-	// TODO: add additional heuristic to check for app package name levels
-								boolean usedInApp = !rootPckg2Lib.keySet().contains(WalaUtils.simpleName(im.getDeclaringClass()));
-
-								// check access specifier for target method
-								IClass targetClazz = cha.lookupClass(csr.getDeclaredTarget().getDeclaringClass());
-								if (targetClazz == null) { // no lookup possible - dead / legacy code?
-									logger.debug(Utils.INDENT + "Unresolvable class for lib method in use: " + csr.getDeclaredTarget().getSignature());
-									if (!unresolvableMethods.containsKey(rootPckg2Lib.get(rootPckg)))
-										unresolvableMethods.put(rootPckg2Lib.get(rootPckg), new TreeSet<String>());
-
-									unresolvableMethods.get(rootPckg2Lib.get(rootPckg)).add(csr.getDeclaredTarget().getSignature());
-									break;
-								}
+		// index matched app packages -> libname
+		final LibPackageIndex libIndex = new LibPackageIndex();
+		final HashMap<String,String> lib2AppRootPckg = new HashMap<String,String>();   // libname -> (matched) root package in app
+		final HashMap<String,SignatureNormalizer> lib2Normalizer = new HashMap<String,SignatureNormalizer>();
 
-								IMethod targetMethod = targetClazz.getMethod(csr.getDeclaredTarget().getSelector());
+		for (String libName: new TreeSet<String>(lib2Profile.keySet())) {
+			ProfileMatch pm = lib2Profile.get(libName);
+			HTreeMatch htm = pm.getHighestSimScore();
 
-								if (targetMethod == null) {  // e.g. if clazz is interface without declared methods
-									targetMethod = WalaUtils.resolveMethod(clazz, csr);
-								}
-								int accessSpecifier = AccessFlags.getMethodAccessCode(targetMethod);
-								
-								String accessSpec = AccessFlags.flags2Str(accessSpecifier);
-								logger.trace(Utils.INDENT + "- method in use (in " + (usedInApp? "app" : "lib") +"): " + csr.getDeclaredTarget().getSignature() + "  in bm: "+ im.getSignature() + "  access: " + accessSpec);
+			for (PackageNode pn: htm.matchingNodes)
+				libIndex.addPackage(pn.packageName, libName);
 
-								
-								String normalizedSig = csr.getDeclaredTarget().getSignature();
+			String appRootPckg = htm.isFullMatch()? pm.getMatchedPackageTree().getRootPackage() : htm.rootPackage;
+			if (appRootPckg == null) continue;
+			lib2AppRootPckg.put(libName, appRootPckg);
 
-								// normalize signature if lib root package does not match app lib root package (e.g. due to id renaming)
-								if (!rootPckg.equals(lib2Profile.get(rootPckg2Lib.get(rootPckg)).lib.packageTree.getRootPackage())) {
-									// replace package name in dot notation
-									String r = rootPckg.replaceAll("\\.", "\\\\.");
-									String rx = lib2Profile.get(rootPckg2Lib.get(rootPckg)).lib.packageTree.getRootPackage().replaceAll("\\.", "\\\\.");
+			// root packages of full matches additionally cover lib packages that are not part of the profile
+			// libs with ambiguous root packages are only identified via their matched packages
+			if (htm.isFullMatch() && !LibraryIdentifier.ambiguousRootPackages.contains(appRootPckg))
+				libIndex.addRootPackage(appRootPckg, libName);
 
-									// replace arguments in / notation
-									String r2 = rootPckg.replaceAll("\\.", "/");
-									String rx2 = lib2Profile.get(rootPckg2Lib.get(rootPckg)).lib.packageTree.getRootPackage().replaceAll("\\.", "/");
+			// signature normalizer for libs whose matched root package does not match the lib root package (e.g. due to id renaming)
+			String libRootPckg = pm.lib.packageTree.getRootPackage();
+			if (libRootPckg != null && !appRootPckg.equals(libRootPckg))
+				lib2Normalizer.put(libName, new SignatureNormalizer(appRootPckg, libRootPckg));
+		}
+		
+		// scan code once, classes are processed in parallel with per-thread accumulators that are merged at the end
+		final List<IClass> appClasses = new ArrayList<IClass>();
+		for (IClass clazz: cha) {
+			if (WalaUtils.isAppClass(clazz))
+				appClasses.add(clazz);
+		}
 
-									normalizedSig = csr.getDeclaredTarget().getSignature().replaceAll(r,rx).replaceAll(r2,rx2);
-								}
-								
-								// update usedMethods
-								if (!usedMethods.containsKey(rootPckg2Lib.get(rootPckg)))
-									usedMethods.put(rootPckg2Lib.get(rootPckg), new TreeMap<String, Integer>());
+		final String logContext = MDC.get(Utils.LOG_CONTEXT_KEY);
+		UsageResult usage = appClasses.parallelStream()
+			.collect(UsageResult::new,
+			         (res, clazz) -> { Utils.setLogContext(logContext); scanClass(cha, clazz, libIndex, lib2Normalizer, res); },
+			         UsageResult::merge);
 
-								usedMethods.get(rootPckg2Lib.get(rootPckg)).put(normalizedSig, accessSpecifier);
-							}
-							
-						}
-					}
-				} catch (InvalidClassFileException e) {
-					logger.error(Utils.stacktrace2Str(e));
-				}
-			}
-		}
+		// libname -> signature, access specifier
+		Map<String, TreeMap<String, Integer>> usedMethods = usage.usedMethods;
+		Map<String, Set<String>> unresolvableMethods = usage.unresolvableMethods;
 
 		
 		// debug output		
@@ -172,7 +130,8 @@ public class LibCodeUsage {
 			// store used methods
 			pm.usedLibMethods = new TreeSet<String>(usedMethods.get(lib).keySet());
 			
-			logger.info("- check lib: " + pm.lib.getLibIdentifier() + "  root package: " + libRootPckg + (!libRootPckg.equals(pm.getMatchedPackageTree().getRootPackage())? "  vs  matched root package: " + pm.getMatchedPackageTree().getRootPackage() : ""));
+			String appRootPckg = lib2AppRootPckg.get(lib);
+			logger.info("- check lib: " + pm.lib.getLibIdentifier() + (pm.isPartialMatch()? " (partial match)" : "") + "  root package: " + libRootPckg + (appRootPckg != null && !appRootPckg.equals(libRootPckg)? "  vs  matched root package: " + appRootPckg : ""));
 			
 			// retrieve number of unique lib classes used
 			Set<String> uniqueClazzes = new HashSet<String>();
@@ -199,6 +158,116 @@ public class LibCodeUsage {
 
 		logger.info(Utils.INDENT + ">> lib code usage analysis done (" + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - starttime) + ")");
 	}
-}
 
+
+	/**
+	 * Ranks matches of different versions of the same library: all configs match &gt; any config matches &gt; higher partial sim score
+	 */
+	private static boolean isBetterMatch(ProfileMatch pm, ProfileMatch cur) {
+		int r1 = pm.doAllConfigsMatch()? 2 : pm.isMatch()? 1 : 0;
+		int r2 = cur.doAllConfigsMatch()? 2 : cur.isMatch()? 1 : 0;
+
+		if (r1 != r2)
+			return r1 > r2;
+		return r1 == 0 && pm.getHighestSimScore().simScore > cur.getHighestSimScore().simScore;
+	}
+
+
+	private static String getPackageName(String methodSignature) {
+		String clazzName = Utils.getFullClassName(methodSignature);
+		int idx = clazzName.lastIndexOf('.');
+		return idx < 0? "" : clazzName.substring(0, idx);
+	}
+
+
+	private static void scanClass(final IClassHierarchy cha, final IClass clazz, final LibPackageIndex libIndex, final Map<String, SignatureNormalizer> lib2Normalizer, final UsageResult res) {
+		final String clazzName = WalaUtils.simpleName(clazz);
+		int idx = clazzName.lastIndexOf('.');
+
+		// libs the calling class belongs to (calls within the same lib are not considered)
+		final List<String> callerLibs = libIndex.lookup(idx < 0? "" : clazzName.substring(0, idx));
+//TODO how to store? extend DB? flag whether usage was found in app dev code (based on (fractions of) package name) or other lib code?  we could also classify by using matched lib packages
+// TODO: add additional heuristic to check for app package name levels
+		final boolean usedInApp = callerLibs.isEmpty();
+		
+		// iterate all methods
+		for (IMethod im: clazz.getDeclaredMethods()) {
+			if (im.isAbstract() || im.isNative()) continue;
+
+			try { 
+				// iterate all call sites
+				for (CallSiteReference csr: CodeScanner.getCallSites(im)) {
+					final String targetSig = csr.getDeclaredTarget().getSignature();
+					
+					for (String libName: libIndex.lookup(getPackageName(targetSig))) {
+						if (!callerLibs.contains(libName)) {
+
+							// check access specifier for target method
+							IClass targetClazz = WalaUtils.lookupClassSynchronized(cha, csr.getDeclaredTarget().getDeclaringClass());
+							if (targetClazz == null) { // no lookup possible - dead / legacy code?
+								logger.debug(Utils.INDENT + "Unresolvable class for lib method in use: " + targetSig);
+								if (!res.unresolvableMethods.containsKey(libName))
+									res.unresolvableMethods.put(libName, new TreeSet<String>());
+
+								res.unresolvableMethods.get(libName).add(targetSig);
+								break;
+							}
+
+							IMethod targetMethod;
+							synchronized (cha) {  // see WalaUtils#lookupClassSynchronized, method lookups lazily populate caches in WALA's class objects
+								targetMethod = targetClazz.getMethod(csr.getDeclaredTarget().getSelector());
+
+								if (targetMethod == null) {  // e.g. if clazz is interface without declared methods
+									targetMethod = WalaUtils.resolveMethod(clazz, csr);
+								}
+							}
+							int accessSpecifier = AccessFlags.getMethodAccessCode(targetMethod);
+							
+							String accessSpec = AccessFlags.flags2Str(accessSpecifier);
+							logger.trace(Utils.INDENT + "- method in use (in " + (usedInApp? "app" : "lib") +"): " + targetSig + "  in bm: "+ im.getSignature() + "  access: " + accessSpec);
+
+							
+							// normalize signature if lib root package does not match app lib root package (e.g. due to id renaming)
+							SignatureNormalizer normalizer = lib2Normalizer.get(libName);
+							String normalizedSig = normalizer == null? targetSig : normalizer.normalize(csr.getDeclaredTarget());
+							
+							// update usedMethods
+							if (!res.usedMethods.containsKey(libName))
+								res.usedMethods.put(libName, new TreeMap<String, Integer>());
+
+							res.usedMethods.get(libName).put(normalizedSig, accessSpecifier);
+						}
 						
+					}
+				}
+			} catch (InvalidClassFileException e) {
+				logger.error(Utils.stacktrace2Str(e));
+			}
+		}
+	}
+
+
+	/**
+	 * Per-thread accumulator for the usage scan
+	 */
+	private static class UsageResult {
+		// libname -> signature, access specifier
+		final Map<String, TreeMap<String, Integer>> usedMethods = new TreeMap<String, TreeMap<String, Integer>>();
+		// libname -> signatures
+		final Map<String, Set<String>> unresolvableMethods = new TreeMap<String, Set<String>>();
+
+		void merge(UsageResult other) {
+			for (Map.Entry<String, TreeMap<String, Integer>> e: other.usedMethods.entrySet()) {
+				if (!usedMethods.containsKey(e.getKey()))
+					usedMethods.put(e.getKey(), new TreeMap<String, Integer>());
+				usedMethods.get(e.getKey()).putAll(e.getValue());
+			}
+
+			for (Map.Entry<String, Set<String>> e: other.unresolvableMethods.entrySet()) {
+				if (!unresolvableMethods.containsKey(e.getKey()))
+					unresolvableMethods.put(e.getKey(), new TreeSet<String>());
+				unresolvableMethods.get(e.getKey()).addAll(e.getValue());
+			}
+		}
+	}
+}
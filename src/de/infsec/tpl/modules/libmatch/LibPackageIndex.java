@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.libmatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Maps app package names to the libraries that were detected in these packages, built once per app.
+ * A package is first looked up in the set of app packages that were matched by a library (full and partial matches).
+ * Packages that are not part of any match are attributed to a library via the root package of its full match
+ * (e.g. lib packages that are not included in the profile). Lookup results are memoized, instances are thread-safe.
+ */
+class LibPackageIndex {
+	private final Map<String, List<String>> package2Libs = new HashMap<String, List<String>>();   // matched app package -> libnames
+	private final Map<String, String> rootPckg2Lib = new HashMap<String, String>();   // root package -> libname
+	private volatile PrefixMatcher rootPckgMatcher;   // created on first lookup
+
+	private final Map<String, List<String>> cache = new ConcurrentHashMap<String, List<String>>();
+
+
+	/**
+	 * Registers an app package that has been matched by a library
+	 */
+	void addPackage(String packageName, String libName) {
+		if (!package2Libs.containsKey(packageName))
+			package2Libs.put(packageName, new ArrayList<String>(1));
+
+		if (!package2Libs.get(packageName).contains(libName))
+			package2Libs.get(packageName).add(libName);
+	}
+
+	/**
+	 * Registers the root package of a library match, the first library registered for a root package wins
+	 * @return  true if the root package has been registered for this library
+	 */
+	boolean addRootPackage(String rootPackage, String libName) {
+		if (rootPckg2Lib.containsKey(rootPackage))
+			return false;
+
+		rootPckg2Lib.put(rootPackage, libName);
+		return true;
+	}
+
+
+	/**
+	 * @param packageName  an app package name in dot notation
+	 * @return  the names of the libraries this package belongs to, an empty list if it does not belong to any library
+	 */
+	List<String> lookup(String packageName) {
+		if (rootPckgMatcher == null) {
+			synchronized (this) {
+				if (rootPckgMatcher == null)
+					rootPckgMatcher = new PrefixMatcher(rootPckg2Lib.keySet());
+			}
+		}
+
+		return cache.computeIfAbsent(packageName, this::computeLibs);
+	}
+
+	private List<String> computeLibs(String packageName) {
+		List<String> libs = package2Libs.get(packageName);
+		if (libs != null)
+			return Collections.unmodifiableList(libs);
+
+		List<String> rootPckgs = rootPckgMatcher.match(packageName);
+		if (rootPckgs.isEmpty())
+			return Collections.emptyList();
+
+		libs = new ArrayList<String>(rootPckgs.size());
+		for (String rootPckg: rootPckgs) {
+			String libName = rootPckg2Lib.get(rootPckg);
+			if (!libs.contains(libName))
+				libs.add(libName);
+		}
+		return Collections.unmodifiableList(libs);
+	}
+}
@@ -18,19 +18,18 @@ import java.io.File;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import com.google.gson.JsonObject;
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
-import de.infsec.tpl.config.LibScoutConfig;
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.hashtree.HashTree;
 import de.infsec.tpl.hashtree.node.Node;
 import de.infsec.tpl.hashtree.node.PackageNode;
@@ -39,13 +38,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
-import com.ibm.wala.dalvik.util.AndroidAnalysisScope;
+import com.ibm.wala.dalvik.classLoader.DexFileModule;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
 
 import de.infsec.tpl.manifest.ProcessManifest;
 import de.infsec.tpl.hash.Hash;
+import de.infsec.tpl.pkg.PackageName;
 import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.pkg.PackageUtils;
 import de.infsec.tpl.pkg.PackageUtils.RELATIONSHIP;
@@ -55,19 +56,25 @@ import de.infsec.tpl.profile.ProfileMatch;
 import de.infsec.tpl.profile.ProfileMatch.HTreeMatch;
 import de.infsec.tpl.profile.ProfileMatch.MatchLevel;
 import de.infsec.tpl.stats.AppStats;
+import de.infsec.tpl.stats.NdjsonWriter;
 import de.infsec.tpl.stats.SerializableAppStats;
-import de.infsec.tpl.utils.ApkUtils;
+import de.infsec.tpl.utils.ApkContainer;
 import de.infsec.tpl.utils.Pair;
+import de.infsec.tpl.utils.PrimordialModule;
 import de.infsec.tpl.utils.Utils;
 
 
 public class LibraryIdentifier {
 	private static final Logger logger = LoggerFactory.getLogger(LibraryIdentifier.class);
 	
+	private final AnalysisContext ctx;
 	private IClassHierarchy cha;
 	private Map<String,String> uniqueLibraries;   // unique library name -> highest version 
 	
 	private AppStats stats;
+	private NdjsonWriter jsonSink;
+	private DexResultCache dexResults;   // null if results of apps with identical code are not reused
+	private final Map<HashTree, PartitionIndex> partitionIndices = new IdentityHashMap<HashTree, PartitionIndex>();  // app hash tree -> package trie
 	private static final String FILE_EXT_SERIALIZED = ".data";
 	private static final String FILE_EXT_JSON = ".json";
 
@@ -79,35 +86,54 @@ public class LibraryIdentifier {
 	}};
 	
 
-	public static AppStats run(File appFile, List<LibProfile> profiles, boolean libUsageAnalysis) throws ClassHierarchyException, NoSuchAlgorithmException, IOException {
-	    LibraryIdentifier libid = new LibraryIdentifier(appFile);
-	    return libid.identifyLibraries(profiles, libUsageAnalysis);
+	public static AppStats run(AnalysisContext ctx, File appFile, List<LibProfile> profiles) throws ClassHierarchyException, NoSuchAlgorithmException, IOException {
+		return run(ctx, appFile, profiles, null);
+	}
+
+	/**
+	 * @param jsonSink  if not null, json results are appended to this sink instead of one json file per app
+	 */
+	public static AppStats run(AnalysisContext ctx, File appFile, List<LibProfile> profiles, NdjsonWriter jsonSink) throws ClassHierarchyException, NoSuchAlgorithmException, IOException {
+	    LibraryIdentifier libid = new LibraryIdentifier(ctx, appFile, jsonSink);
+	    return libid.identifyLibraries(profiles, ctx.runLibUsageAnalysis);
     }
 
 	
-	private LibraryIdentifier(File appFile) {
-		this.stats = new AppStats(appFile);
+	private LibraryIdentifier(AnalysisContext ctx, File appFile, NdjsonWriter jsonSink) {
+		this.ctx = ctx;
+		this.stats = new AppStats(appFile, ctx.showComments);
+		this.jsonSink = jsonSink;
+
+		// reused results are only written as json, stats / usage results for updatability require the full analysis
+		if (ctx.opMatch() && ctx.generateJSON && ctx.dexResultsDir != null)
+			this.dexResults = new DexResultCache(ctx.dexResultsDir);
 		
 		// set identifier for logging
-		String logIdentifier = LibScoutConfig.logDir.getAbsolutePath() + File.separator;
+		String logIdentifier = ctx.logDir.getAbsolutePath() + File.separator;
 		logIdentifier +=  appFile.getName().replaceAll("\\.jar", "").replaceAll("\\.apk", "").replaceAll("\\.aar", "");
 		
-		MDC.put("appPath", logIdentifier);
+		MDC.put(Utils.LOG_CONTEXT_KEY, logIdentifier);
 	}
 
 	
-	private void createClassHierarchy() throws IOException, ClassHierarchyException {
+	private void createClassHierarchy(ApkContainer apk) throws IOException, ClassHierarchyException {
 		long s = System.currentTimeMillis();
 
 		// check if we have a multi-dex file
-		stats.isMultiDex = ApkUtils.isMultiDexApk(stats.appFile);
+		stats.isMultiDex = apk.isMultiDex();
 		if (stats.isMultiDex)
 			logger.info("Multi-dex apk detected - Code is merged to single class hierarchy!");
 
 		// create analysis scope and generate class hierarchy
 		// we do not need additional libraries like support libraries,
 		// as they are statically linked in the app code.
-		final AnalysisScope scope = AndroidAnalysisScope.setUpAndroidAnalysisScope(new File(stats.appFile.getAbsolutePath()).toURI(), null /* no exclusions */, null /* we always pass an android lib */, LibScoutConfig.pathToAndroidJar.toURI());
+		// the android.jar is shared across all hierarchies (see PrimordialModule), hence we do not use
+		// AndroidAnalysisScope.setUpAndroidAnalysisScope that re-reads the jar for every app
+		final AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+		scope.setLoaderImpl(ClassLoaderReference.Primordial, WalaUtils.DEX_CLASSLOADER_IMPL);
+		scope.addToScope(ClassLoaderReference.Primordial, PrimordialModule.get(ctx.pathToAndroidJar));
+		scope.setLoaderImpl(ClassLoaderReference.Application, WalaUtils.DEX_CLASSLOADER_IMPL);
+		scope.addToScope(ClassLoaderReference.Application, DexFileModule.make(new File(stats.appFile.getAbsolutePath())));
 
 		cha = ClassHierarchyFactory.makeWithRoot(scope);
 		logger.info("Generated class hierarchy (in " + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - s) + ")");
@@ -120,30 +146,53 @@ public class LibraryIdentifier {
 		
 		logger.info("Process app: " + stats.appFile.getName());
 		
-		// parse AndroidManifest.xml 
-		stats.manifest = parseManifest(stats.appFile);
-		
-		// check stat file <stats-dir>/package-level1/package-level2/appName_appVersionCode.data
-		String statsFileName = stats.appFile.getName().replaceAll("\\.jar", "").replaceAll("\\.apk", "").replaceAll("\\.aar", "") + "_" + stats.manifest.getVersionCode();  // without file suffix
+		String statsFileName;
+		File statsSubDir;
+		File statsFile;
+		String dexDigest = null;
 
-		File statsSubDir = PackageUtils.packageToPath(stats.manifest.getPackageName());
-		File statsFile = new File(LibScoutConfig.statsDir + File.separator + statsSubDir + File.separator + statsFileName  + FILE_EXT_SERIALIZED);
+		// the apk is opened once for all per-app I/O (manifest, dex entries)
+		try (ApkContainer apk = new ApkContainer(stats.appFile)) {
+			// parse AndroidManifest.xml 
+			stats.manifest = parseManifest(apk);
 
-		// if stat file already exists for this app, return
-		if (LibScoutConfig.generateStats && statsFile.exists()) {
-			logger.info(Utils.INDENT + "Stat file " + statsFile + " already exists - ABORT!");
-			return null;
-		}
+			// check stat file <stats-dir>/package-level1/package-level2/appName_appVersionCode.data
+			statsFileName = stats.appFile.getName().replaceAll("\\.jar", "").replaceAll("\\.apk", "").replaceAll("\\.aar", "") + "_" + stats.manifest.getVersionCode();  // without file suffix
+
+			statsSubDir = PackageUtils.packageToPath(stats.manifest.getPackageName());
+			statsFile = new File(ctx.statsDir + File.separator + statsSubDir + File.separator + statsFileName  + FILE_EXT_SERIALIZED);
+
+			// if stat file already exists for this app, return
+			if (ctx.generateStats && statsFile.exists()) {
+				logger.info(Utils.INDENT + "Stat file " + statsFile + " already exists - ABORT!");
+				return null;
+			}
+
+			// fast triage: apps with identical code (re-uploads, repacks) reuse the results of an already analyzed app
+			if (dexResults != null) {
+				dexDigest = DexResultCache.digest(apk, ctx, stats.manifest.getPackageName(), profiles);
+				JsonObject storedExport = dexDigest == null? null : dexResults.load(dexDigest);
+
+				if (storedExport != null) {
+					logger.info(Utils.INDENT + "Code identical to an already analyzed app (dex digest: " + dexDigest + ") - reuse results");
+					stats.processingTime = System.currentTimeMillis() - starttime;
+					writeJson(stats.export(storedExport), statsSubDir, statsFileName);
+
+					logger.info("App processing time: " + Utils.millisecondsToFormattedTime(stats.processingTime));
+					return null;
+				}
+			}
 		
-		stats.profiles = profiles;
-		uniqueLibraries = LibProfile.getUniqueLibraries(profiles);
-		logger.info("Found " + uniqueLibraries.size() + " unique libraries in " + profiles.size() + " library profiles");
+			stats.profiles = profiles;
+			uniqueLibraries = LibProfile.getUniqueLibraries(profiles);
+			logger.info("Found " + uniqueLibraries.size() + " unique libraries in " + profiles.size() + " library profiles");
 
-		// create CHA
-		createClassHierarchy();
+			// create CHA
+			createClassHierarchy(apk);
+		}
 		
 		// generate app package tree and hash trees
-		AppProfile appProfile = AppProfile.create(cha);
+		AppProfile appProfile = AppProfile.create(cha, ctx);
 		stats.pTree = appProfile.packageTree;
 		stats.appHashTrees = appProfile.hashTrees;
 
@@ -175,7 +224,7 @@ public class LibraryIdentifier {
 			logger.debug("- Match Library: " + profile);
 			logger.trace("Lib PackageTree:");
 			if (logger.isTraceEnabled()) {
-				profile.packageTree.print(true);
+				profile.packageTree.print(true, ctx.asciiRendering);
 				logger.trace("");
 			}
 
@@ -199,7 +248,7 @@ public class LibraryIdentifier {
 		stats.pMatches = results;
 		printResults(results);
 
-		// run library API usage analysis for full matches only
+		// run library API usage analysis for full and partial matches
 		if (libUsageAnalysis)
 			LibCodeUsage.checkUsage(cha, results);
 		
@@ -207,16 +256,18 @@ public class LibraryIdentifier {
 		stats.processingTime = System.currentTimeMillis() - starttime;
 
 		// write app results to json
-		if (LibScoutConfig.generateJSON) {
-			File jsonFile = new File(LibScoutConfig.jsonDir + File.separator + statsSubDir + File.separator + statsFileName  + FILE_EXT_JSON);
-			Utils.obj2JsonFile(jsonFile, stats);
-			logger.info("Write app stats to JSON (dir: " + LibScoutConfig.jsonDir + ")");
+		if (ctx.generateJSON) {
+			Object export = stats.export();
+			writeJson(export, statsSubDir, statsFileName);
+
+			if (dexDigest != null)
+				dexResults.store(dexDigest, export);
 		}
 		
 		// serialize appstats to disk
-		if (LibScoutConfig.generateStats) {
+		if (ctx.generateStats) {
 			if (!stats.pMatches.isEmpty()) {
-				logger.info("Serialize app stats to disk (dir: " + LibScoutConfig.statsDir + ")");
+				logger.info("Serialize app stats to disk (dir: " + ctx.statsDir + ")");
 				Utils.object2Disk(statsFile, new SerializableAppStats(stats));  // TODO mv from java serialization to protobufs or remove w/o replacement
 			}
 		}
@@ -225,6 +276,19 @@ public class LibraryIdentifier {
 		return stats;
 	}
 
+
+
+	private void writeJson(Object export, File statsSubDir, String statsFileName) throws IOException {
+		if (jsonSink != null) {
+			jsonSink.write(export);
+			logger.info("Append app stats to NDJSON (dir: " + ctx.jsonDir + ")");
+		} else {
+			File jsonFile = new File(ctx.jsonDir + File.separator + statsSubDir + File.separator + statsFileName  + FILE_EXT_JSON);
+			Utils.obj2JsonFile(jsonFile, export);
+			logger.info("Write app stats to JSON (dir: " + ctx.jsonDir + ")");
+		}
+	}
+
 	
 
 	/**
@@ -302,7 +366,7 @@ public class LibraryIdentifier {
 		}
 
 		// abort if partial matching has been disabled via cli-option 
-		if (LibScoutConfig.noPartialMatching) {
+		if (ctx.noPartialMatching) {
 			logger.debug(Utils.INDENT2 + "Partial matching disabled - [SKIP]");
 			match.simScore = ProfileMatch.MATCH_HTREE_NONE;
 			pMatch.addResult(match);
@@ -331,6 +395,7 @@ public class LibraryIdentifier {
 		logger.debug(Utils.INDENT2 + "# step 1: compute candidate list");
 		long time = System.currentTimeMillis();
 		HashMap<Node, List<Pair<Node, Float>>> candidateList = new HashMap<Node, List<Pair<Node, Float>>>();
+		PackageName appPackageName = PackageName.of(stats.manifest.getPackageName());
 		for (Node lp: libHashTree.getPackageNodes()) {
 			ArrayList<Pair<Node, Float>> clist = new ArrayList<Pair<Node, Float>>();  // candidate list for lp
 
@@ -338,7 +403,7 @@ public class LibraryIdentifier {
 				// filter application packages that start with declared manifest app package name
 				// TODO: unfortunately most app packages do only partially match the manifest package name. This means to match more app packages
 				//       we would have to test partially (but: this could lead to false positives if we have libs from the same developer)
-				if (((PackageNode) ap).packageName.startsWith(stats.manifest.getPackageName()))
+				if (((PackageNode) ap).getPackageName().startsWith(appPackageName))
 					continue;
 				
 				float score = calcNodeSimScore(lp, ap);
@@ -376,13 +441,8 @@ public class LibraryIdentifier {
 		int libPDepth = PackageUtils.packageDepth(libraryRootPackage);
 		
 		// retrieve potential app root packages of depth libPDepth
-		Set<String> appRootPackages = new TreeSet<String>();
-		for (Node ap: appHashTree.getPackageNodes()) {
-			PackageNode apn = (PackageNode) ap;
-			String pRootPackage = PackageUtils.getSubPackageOfDepth(apn.packageName, libPDepth);
-			if (pRootPackage != null)
-				appRootPackages.add(pRootPackage);
-		}
+		PartitionIndex partitionIndex = getPartitionIndex(appHashTree);
+		Set<String> appRootPackages = partitionIndex.getPartitions(libPDepth);
 
 
 		logger.trace(Utils.indent(3) + "# partitions(" + appRootPackages.size() + "): "	 + appRootPackages);
@@ -401,10 +461,13 @@ public class LibraryIdentifier {
 		// TODO: could be computed even earlier (pmatchForTrees)
 		List<RELATIONSHIP> libPackageRel = computePackageRelationships(sortedCList);
 
+		// create filtered candidate list views for all partitions in a single pass
+		Map<String, ArrayList<List<Pair<Node, Float>>>> partitionViews = createPartitionViews(partitionIndex, appRootPackages, libPDepth, sortedCList);
+
 		HashMap<String, Pair<Float, List<Pair<Node, Float>>>> scores = new HashMap<String, Pair<Float, List<Pair<Node, Float>>>>();
 		for (String rootPackage: appRootPackages) {
 			time = System.currentTimeMillis();
-			Pair<Float, List<Pair<Node, Float>>> partSimScore = calcPartitionSimScore(rootPackage, sortedCList, libPackageRel);
+			Pair<Float, List<Pair<Node, Float>>> partSimScore = calcPartitionSimScore(rootPackage, sortedCList, partitionViews.get(rootPackage), libPackageRel);
 			if (partSimScore != null) {
 				logger.debug(Utils.indent(4) + "-> partition: " + rootPackage + "  sim score: " + partSimScore);
 				scores.put(rootPackage, partSimScore);
@@ -466,7 +529,7 @@ public class LibraryIdentifier {
 		// compute package relationship for adjacent packages (used as additional app package filter in getCombinations)
 		ArrayList<RELATIONSHIP> result = new ArrayList<RELATIONSHIP>();
 		for (int i = 0; i < libraryPackageNodes.size()-1; i++) {
-			result.add(PackageUtils.testRelationship(libraryPackageNodes.get(i).packageName, libraryPackageNodes.get(i+1).packageName));
+			result.add(libraryPackageNodes.get(i).getPackageName().testRelationship(libraryPackageNodes.get(i+1).getPackageName()));
 		}
 		
 		return result;
@@ -474,32 +537,60 @@ public class LibraryIdentifier {
 
 	
 	
-	private Pair<Float, List<Pair<Node, Float>>> calcPartitionSimScore(final String rootPackage, final TreeSet<Map.Entry<Node, List<Pair<Node, Float>>>> candidateList, final List<RELATIONSHIP> libPackageRel) {
-		logger.trace(Utils.indent(3) + "- Calculate sim score for partition: " + rootPackage);
+	private synchronized PartitionIndex getPartitionIndex(final HashTree appHashTree) {
+		PartitionIndex index = partitionIndices.get(appHashTree);
+		if (index == null) {
+			index = new PartitionIndex(appHashTree.getPackageNodes());
+			partitionIndices.put(appHashTree, index);
+		}
+		return index;
+	}
 
-		// create view on candidate list (filter app packages that do not start with rootPackage and app packages
-		// that have a different depth as the lib package)
-		// TODO: maybe could be improved by using a bitmask
-		ArrayList<List<Pair<Node, Float>>> cList = new ArrayList<List<Pair<Node, Float>>>();
 
-		int packagesWithCandidates = 0;
-		for (Iterator<Map.Entry<Node, List<Pair<Node, Float>>>> it = candidateList.iterator(); it.hasNext(); ) {
-			Map.Entry<Node, List<Pair<Node, Float>>> pckgCandidates = it.next();
-			
-			ArrayList<Pair<Node,Float>> filteredCandidates = new ArrayList<Pair<Node,Float>>();
+	/**
+	 * Create a view on the candidate list for every partition, i.e. filter app packages that do not start with the partition
+	 * root package and app packages that have a different depth as the lib package. Each candidate is assigned to its
+	 * partition via the {@link PartitionIndex}, the candidate order per lib package is preserved.
+	 * @return  mapping of partition root package -> filtered candidate list (one list per lib package)
+	 */
+	private static Map<String, ArrayList<List<Pair<Node, Float>>>> createPartitionViews(final PartitionIndex partitionIndex, final Set<String> partitions, final int partitionDepth, final TreeSet<Map.Entry<Node, List<Pair<Node, Float>>>> candidateList) {
+		Map<String, ArrayList<List<Pair<Node, Float>>>> views = new HashMap<String, ArrayList<List<Pair<Node, Float>>>>();
+		for (String partition: partitions) {
+			ArrayList<List<Pair<Node, Float>>> cList = new ArrayList<List<Pair<Node, Float>>>(candidateList.size());
+			for (int i = 0; i < candidateList.size(); i++)
+				cList.add(new ArrayList<Pair<Node, Float>>());
+			views.put(partition, cList);
+		}
+
+		int idx = 0;
+		for (Map.Entry<Node, List<Pair<Node, Float>>> pckgCandidates: candidateList) {
+			int libPckgDepth = ((PackageNode) pckgCandidates.getKey()).getPackageName().depth();
+
 			for (Pair<Node, Float> candidate: pckgCandidates.getValue()) {
 				PackageNode pn = (PackageNode) candidate.first();
-				
-				// check if candidate package starts with root package and has the same package depth
-				if (pn.packageName.startsWith(rootPackage) && PackageUtils.packageDepth(((PackageNode) pckgCandidates.getKey()).packageName) == PackageUtils.packageDepth(pn.packageName))
-					filteredCandidates.add(candidate);
+				if (pn.getPackageName().depth() != libPckgDepth)
+					continue;
+
+				String partition = partitionIndex.getPartition(pn, partitionDepth);
+				ArrayList<List<Pair<Node, Float>>> cList = partition == null? null : views.get(partition);
+				if (cList != null)
+					cList.get(idx).add(candidate);
 			}
+			idx++;
+		}
+
+		return views;
+	}
+
+
+	private Pair<Float, List<Pair<Node, Float>>> calcPartitionSimScore(final String rootPackage, final TreeSet<Map.Entry<Node, List<Pair<Node, Float>>>> candidateList, final ArrayList<List<Pair<Node, Float>>> cList, final List<RELATIONSHIP> libPackageRel) {
+		logger.trace(Utils.indent(3) + "- Calculate sim score for partition: " + rootPackage);
 
+		int packagesWithCandidates = 0;
+		for (List<Pair<Node, Float>> filteredCandidates: cList) {
 			if (!filteredCandidates.isEmpty()) {
 				packagesWithCandidates++;
 			}
-			
-			cList.add(filteredCandidates);
 		}
 
 		// stop if less than half of lib packages have no candidate
@@ -584,8 +675,8 @@ public class LibraryIdentifier {
 		        	if (cList.get(i).isEmpty() || cList.get(i+1).isEmpty())  // tolerate empty candidates
 		        		continue;
 		        	
-		        	RELATIONSHIP candidateRel = PackageUtils.testRelationship(((PackageNode) cList.get(i).get(counterArray[i]).first()).packageName,
-		        															  ((PackageNode) cList.get(i+1).get(counterArray[i+1]).first()).packageName);
+		        	RELATIONSHIP candidateRel = ((PackageNode) cList.get(i).get(counterArray[i]).first()).getPackageName()
+		        		.testRelationship(((PackageNode) cList.get(i+1).get(counterArray[i+1]).first()).getPackageName());
 		        	if (!libPackageRel.get(i).equals(candidateRel)) {
 		        		curSolution = null;
 		        		break;
@@ -625,17 +716,12 @@ public class LibraryIdentifier {
 
 	
 	// Filter candidates by lib root package
-	private static Set<String> getPartitionsByRootPackage(Collection<String> partitions, String libRootPackage) {
+	private static Set<String> getPartitionsByRootPackage(Set<String> partitions, String libRootPackage) {
 		if (partitions.isEmpty() || partitions.size() == 1 || libRootPackage == null) 
-			return new HashSet<String>(partitions);
-
-		Set<String> result = new TreeSet<String>();
-		for (String partition: partitions) {
-			if (partition.startsWith(libRootPackage))
-				result.add(partition);
-		}
+			return partitions;
 
-		return result.isEmpty()? new TreeSet<String>(partitions) : result;
+		// partitions have the same depth as the lib root package, i.e. a partition can only start with it if both are equal
+		return partitions.contains(libRootPackage)? Collections.singleton(libRootPackage) : partitions;
 	}
 	
 	
@@ -694,7 +780,7 @@ public class LibraryIdentifier {
 			for (ProfileMatch pm: results) {
 				if (pm.lib.description.name.equals(libName) && pm.doAllConfigsMatch()) {
 					exactMatches.add(libName);
-					pm.print();
+					pm.print(ctx);
 				}
 			}
 		}
@@ -719,7 +805,7 @@ public class LibraryIdentifier {
 			
 			for (ProfileMatch pm: bestMatches) {
 				almostExactMatches.add(libName);       /// TODO TODO : full code match?  (if not how much code?)
-				pm.print();
+				pm.print(ctx);
 			}
 		}
 		
@@ -729,7 +815,7 @@ public class LibraryIdentifier {
 		logger.info("");
 		logger.info("- Partial library matches:");
 		
-		if (LibScoutConfig.noPartialMatching) {
+		if (ctx.noPartialMatching) {
 			logger.info(Utils.INDENT + "## Partial matching disabled ##");
 			logger.info("");
 		} else {
@@ -783,14 +869,14 @@ public class LibraryIdentifier {
 			logger.trace("");
 			logger.trace("Un-matched package tree (only fully matched libs are removed):");
 			PackageTree croppedTree = PackageTree.make(cha, true, matchedPackages);
-			croppedTree.print(true);
+			croppedTree.print(true, ctx.asciiRendering);
 		}
 	}
 
 	
-	private ProcessManifest parseManifest(File appFile) {
+	private ProcessManifest parseManifest(ApkContainer apk) {
 		ProcessManifest pm = new ProcessManifest();
-		pm.loadManifestFile(appFile.getAbsolutePath());
+		pm.loadManifestFile(apk);
 
 		logger.info("= Manifest Parser =");
 		logger.info(Utils.INDENT + "    Package name: " + pm.getPackageName());
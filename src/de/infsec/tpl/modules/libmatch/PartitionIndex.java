@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.libmatch;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.infsec.tpl.hashtree.node.PackageNode;
+import de.infsec.tpl.pkg.PackageName;
+
+
+/**
+ * Prefix trie over the package names of an app {@link de.infsec.tpl.hashtree.HashTree}, built once per app.
+ * Used to determine partitions (potential library root packages of a given depth) and to map
+ * app package nodes to their partition by lookup instead of re-scanning package names for every partition.
+ */
+class PartitionIndex {
+	private final TrieNode root = new TrieNode(null, "", 0);
+	private final Map<PackageNode, TrieNode> node2Trie = new IdentityHashMap<PackageNode, TrieNode>();  // PackageNode.equals compares hashes
+	private final Map<Integer, Set<String>> depth2Partitions = new HashMap<Integer, Set<String>>();
+
+	private static class TrieNode {
+		final TrieNode parent;
+		final String packageName;
+		final int depth;
+		final Map<String, TrieNode> childs = new HashMap<String, TrieNode>();
+		int maxDepth;   // maximum package depth in this subtree
+
+		TrieNode(TrieNode parent, String packageName, int depth) {
+			this.parent = parent;
+			this.packageName = packageName;
+			this.depth = depth;
+			this.maxDepth = depth;
+		}
+	}
+
+
+	PartitionIndex(Collection<PackageNode> packageNodes) {
+		for (PackageNode pn: packageNodes) {
+			PackageName name = pn.getPackageName();
+
+			TrieNode cur = root;
+			for (int i = 0; i < name.depth(); i++) {
+				cur.maxDepth = Math.max(cur.maxDepth, name.depth());
+
+				TrieNode child = cur.childs.get(name.fragment(i));
+				if (child == null) {
+					child = new TrieNode(cur, i == 0? name.fragment(i) : cur.packageName + "." + name.fragment(i), i+1);
+					cur.childs.put(name.fragment(i), child);
+				}
+				cur = child;
+			}
+
+			node2Trie.put(pn, cur);
+		}
+	}
+
+
+	/**
+	 * Retrieve all partitions of the given depth, i.e. the distinct sub packages of depth <i>depth</i>
+	 * of all app packages that are deeper than <i>depth</i> (cf. {@link de.infsec.tpl.pkg.PackageUtils#getSubPackageOfDepth(String, int)})
+	 * @param depth  package depth of the partition root packages
+	 * @return  an ordered, unmodifiable set of partition root packages
+	 */
+	synchronized Set<String> getPartitions(int depth) {
+		Set<String> result = depth2Partitions.get(depth);
+		if (result == null) {
+			result = new TreeSet<String>();
+			collectPartitions(root, depth, result);
+			result = Collections.unmodifiableSet(result);
+			depth2Partitions.put(depth, result);
+		}
+		return result;
+	}
+
+	private void collectPartitions(TrieNode n, int depth, Set<String> result) {
+		if (n.maxDepth <= depth)
+			return;
+
+		if (n.depth == depth)
+			result.add(n.packageName);
+		else {
+			for (TrieNode c: n.childs.values())
+				collectPartitions(c, depth, result);
+		}
+	}
+
+
+	/**
+	 * Determine the partition (root package of the given depth) for an app package node.
+	 * @param pn  an app package node from the indexed hash tree
+	 * @param depth  package depth of the partition root packages
+	 * @return  the partition root package or null, if the package is not indexed or less deep than <i>depth</i>
+	 */
+	String getPartition(PackageNode pn, int depth) {
+		TrieNode n = node2Trie.get(pn);
+		if (n == null || n.depth < depth)
+			return null;
+
+		while (n.depth > depth)
+			n = n.parent;
+		return n.packageName;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.libmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Character trie over a fixed set of package prefixes (e.g. library root packages).
+ * Determines all packages a package name starts with in a single pass over the name,
+ * i.e. independent of the number of prefixes. Prefixes are matched at fragment boundaries
+ * only (cf. {@link de.infsec.tpl.pkg.PackageName#startsWith(de.infsec.tpl.pkg.PackageName)}),
+ * i.e. com.foobar does not start with com.foo.
+ */
+class PrefixMatcher {
+	private final TrieNode root = new TrieNode();
+
+	private static class TrieNode {
+		final Map<Character, TrieNode> childs = new HashMap<Character, TrieNode>();
+		String prefix;   // non-null if a prefix ends at this node
+	}
+
+
+	PrefixMatcher(Collection<String> prefixes) {
+		for (String p: prefixes) {
+			TrieNode cur = root;
+			for (int i = 0; i < p.length(); i++) {
+				TrieNode n = cur.childs.get(p.charAt(i));
+				if (n == null) {
+					n = new TrieNode();
+					cur.childs.put(p.charAt(i), n);
+				}
+				cur = n;
+			}
+			cur.prefix = p;
+		}
+	}
+
+
+	/**
+	 * @param str  the package name to test
+	 * @return  all prefixes <i>str</i> starts with (shortest first), an empty list if none matches
+	 */
+	List<String> match(String str) {
+		List<String> result = Collections.emptyList();
+
+		TrieNode cur = root;
+		for (int i = 0; cur != null; i++) {
+			// a prefix must be followed by a package separator or the end of the name
+			if (cur.prefix != null && (i == str.length() || str.charAt(i) == '.')) {
+				if (result.isEmpty()) result = new ArrayList<String>(1);
+				result.add(cur.prefix);
+			}
+
+			cur = i < str.length()? cur.childs.get(str.charAt(i)) : null;
+		}
+
+		return result;
+	}
+}
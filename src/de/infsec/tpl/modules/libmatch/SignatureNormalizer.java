@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.libmatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.types.MethodReference;
+
+
+/**
+ * Rewrites method signatures of a library whose root package in the app differs from the original
+ * library root package (e.g. due to identifier renaming or repackaging), both in dot notation (declaring class)
+ * and in slash notation (argument / return types). The root package is only replaced at the start of a class name,
+ * i.e. at the start of the declaring class and after the <i>L</i> of a type descriptor, and only if followed by a
+ * package separator or the end of the name. Normalized signatures are memoized per {@link MethodReference}.
+ * Instances are thread-safe.
+ */
+class SignatureNormalizer {
+	private final String appRootDot;
+	private final String libRootDot;
+	private final String appRootSlash;
+	private final String libRootSlash;
+
+	private final Map<MethodReference, String> cache = new ConcurrentHashMap<MethodReference, String>();
+
+
+	/**
+	 * @param appRootPackage  the matched root package in the app
+	 * @param libRootPackage  the original library root package
+	 */
+	SignatureNormalizer(String appRootPackage, String libRootPackage) {
+		this.appRootDot = appRootPackage;
+		this.libRootDot = libRootPackage;
+		this.appRootSlash = appRootPackage.replace('.', '/');
+		this.libRootSlash = libRootPackage.replace('.', '/');
+	}
+
+
+	String normalize(MethodReference ref) {
+		return cache.computeIfAbsent(ref, r -> normalize(r.getSignature()));
+	}
+
+	String normalize(String signature) {
+		int paramsIdx = signature.indexOf('(');
+		if (paramsIdx < 0)
+			paramsIdx = signature.length();
+
+		StringBuilder sb = new StringBuilder(signature.length() + 16);
+		int start = 0;
+
+		// declaring class in dot notation
+		if (startsWithPackage(signature, 0, paramsIdx, appRootDot, '.')) {
+			sb.append(libRootDot);
+			start = appRootDot.length();
+		}
+
+		// argument / return types in slash notation, i.e. L<classname>;
+		for (int i = paramsIdx; i < signature.length(); i++) {
+			if (signature.charAt(i) != 'L')
+				continue;
+
+			int end = signature.indexOf(';', i);
+			if (end < 0)
+				break;
+
+			if (startsWithPackage(signature, i+1, end, appRootSlash, '/')) {
+				sb.append(signature, start, i+1).append(libRootSlash);
+				start = i+1 + appRootSlash.length();
+			}
+			i = end;
+		}
+
+		if (start == 0)
+			return signature;
+		return sb.append(signature, start, signature.length()).toString();
+	}
+
+	/**
+	 * @return true, if the name within [from, end) of <i>str</i> starts with <i>pckg</i>, followed by
+	 *   <i>separator</i> or the end of the name
+	 */
+	private static boolean startsWithPackage(String str, int from, int end, String pckg, char separator) {
+		int pckgEnd = from + pckg.length();
+		return pckgEnd <= end && str.startsWith(pckg, from) && (pckgEnd == end || str.charAt(pckgEnd) == separator);
+	}
+}
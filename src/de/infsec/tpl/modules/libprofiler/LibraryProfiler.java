@@ -18,12 +18,11 @@ import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
-import java.util.jar.JarFile;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
-import de.infsec.tpl.config.LibScoutConfig;
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.hashtree.HashTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,13 +33,11 @@ import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
-import com.ibm.wala.types.ClassLoaderReference;
 
 import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.profile.LibProfile;
 import de.infsec.tpl.profile.LibraryDescription;
 import de.infsec.tpl.profile.Profile;
-import de.infsec.tpl.utils.AarFile;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
 import de.infsec.tpl.xml.XMLParser;
@@ -51,26 +48,28 @@ public class LibraryProfiler {
 	
 	public static String FILE_EXT_LIB_PROFILE = "libv";   // single library version profile
 	
+	private final AnalysisContext ctx;
 	private File libraryFile;             // library.jar || library.aar
 	private LibraryDescription libDesc;   // library description parsed from an XML file
 
 
-	public static void extractFingerPrints(File libraryFile, File libDescriptionFile) throws ParserConfigurationException, SAXException, IOException, ParseException, ClassHierarchyException, ClassNotFoundException {
-		new LibraryProfiler(libraryFile,libDescriptionFile).extractFingerPrints();
+	public static void extractFingerPrints(AnalysisContext ctx, File libraryFile, File libDescriptionFile) throws ParserConfigurationException, SAXException, IOException, ParseException, ClassHierarchyException, ClassNotFoundException {
+		new LibraryProfiler(ctx, libraryFile,libDescriptionFile).extractFingerPrints();
 	}
 
 
-	private LibraryProfiler(File libraryFile, File libDescriptionFile) throws ParserConfigurationException, SAXException, IOException, ParseException {
+	private LibraryProfiler(AnalysisContext ctx, File libraryFile, File libDescriptionFile) throws ParserConfigurationException, SAXException, IOException, ParseException {
+		this.ctx = ctx;
 		this.libraryFile = libraryFile;
 		
 		// read library description
 		this.libDesc = XMLParser.readLibraryXML(libDescriptionFile);
 		
 		// set identifier for logging
-		String logIdentifier = LibScoutConfig.logDir.getAbsolutePath() + File.separator;
+		String logIdentifier = ctx.logDir.getAbsolutePath() + File.separator;
 		logIdentifier += libDesc.name.replaceAll(" ", "-") + "_" + libDesc.version;
 		
-		MDC.put("appPath", logIdentifier);
+		MDC.put(Utils.LOG_CONTEXT_KEY, logIdentifier);
 	}
 
 		
@@ -83,28 +82,17 @@ public class LibraryProfiler {
 			logger.info(desc);
 		
 		// create analysis scope and generate class hierarchy
-		final AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
-		
-		JarFile jf = libraryFile.getName().endsWith(".aar")? new AarFile(libraryFile).getJarFile() : new JarFile(libraryFile); 
-		scope.addToScope(ClassLoaderReference.Application, jf);
-		scope.addToScope(ClassLoaderReference.Primordial, new JarFile(LibScoutConfig.pathToAndroidJar));
+		final AnalysisScope scope = WalaUtils.createLibraryScope(libraryFile, ctx.pathToAndroidJar);
 
 		IClassHierarchy cha = ClassHierarchyFactory.makeWithRoot(scope);
 		WalaUtils.getChaStats(cha);
 		
-		// cleanup tmp files if library input was an .aar file
-		if (libraryFile.getName().endsWith(".aar")) {
-			File tmpJar = new File(jf.getName());
-			tmpJar.delete();
-			logger.debug(Utils.indent() + "tmp jar-file deleted at " + tmpJar.getName());
-		}
-		
-		PackageTree pTree = Profile.generatePackageTree(cha);
+		PackageTree pTree = Profile.generatePackageTree(cha, ctx);
 		if (pTree.getRootPackage() == null) {
 			logger.warn(Utils.INDENT + "Library contains multiple root packages");
 		}
 
-		List<HashTree> hTrees = Profile.generateHashTrees(cha);
+		List<HashTree> hTrees = Profile.generateHashTrees(cha, ctx);
 
 		// if hash tree is empty do not dump a profile
 		if (hTrees.isEmpty() || hTrees.get(0).getNumberOfClasses() == 0) {
@@ -121,7 +109,7 @@ public class LibraryProfiler {
 
 	// serialize lib profiles to disk (<profilesDir>/<lib-category>/libName_libVersion.lib)
 	private void serialize(PackageTree pTree, List<HashTree> hTrees) {
-		File targetDir = new File(LibScoutConfig.profilesDir + File.separator + libDesc.category.toString());
+		File targetDir = new File(ctx.profilesDir + File.separator + libDesc.category.toString());
 		File proFile = new File(targetDir + File.separator + libDesc.name.replaceAll(" ", "-") + "_" + libDesc.version + "." + FILE_EXT_LIB_PROFILE);
 
 		logger.info("");
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.modules.updatability;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+
+import de.infsec.tpl.utils.Utils;
+
+
+/**
+ * Compact lib api compat information of a single library, i.e. the ordered list of library versions
+ * and per documented API signature a bitmap of the versions (ordinals) that include the API.
+ * The index is compiled once from the json output of the library api analysis and stored next to it
+ * in a binary format <pre>  &lt;compatDir&gt;/index/&lt;libName&gt;.idx</pre>
+ * The header stores length and last modification time of the json file, the index is rebuilt if either
+ * of them differs or the format changed.
+ */
+public class LibApiCompatIndex {
+	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.modules.updatability.LibApiCompatIndex.class);
+
+	private static final int MAGIC = 0x4C414349;   // "LACI"
+	private static final int FORMAT_VERSION = 2;
+	private static final String INDEX_DIR = "index";
+	private static final String FILE_EXT = ".idx";
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	public final String libName;
+	private final String[] versions;                 // ascending order
+	private final Map<String, Integer> version2Ordinal;
+	private final Map<String, BitSet> api2Versions;  // api signature -> version ordinals
+
+
+	private LibApiCompatIndex(String libName, String[] versions, Map<String, BitSet> api2Versions) {
+		this.libName = libName;
+		this.versions = versions;
+		this.api2Versions = api2Versions;
+
+		this.version2Ordinal = new HashMap<String, Integer>(versions.length * 2);
+		for (int i = 0; i < versions.length; i++)
+			version2Ordinal.put(versions[i], i);
+	}
+
+
+	public int getNumberOfVersions() {
+		return versions.length;
+	}
+
+	public String getVersion(int ordinal) {
+		return versions[ordinal];
+	}
+
+	public String getLatestVersion() {
+		return versions.length == 0? null : versions[versions.length-1];
+	}
+
+	/**
+	 * @return  the ordinal of the version or -1 if unknown
+	 */
+	public int getOrdinal(String version) {
+		Integer ord = version2Ordinal.get(version);
+		return ord == null? -1 : ord;
+	}
+
+	public boolean containsApi(String signature) {
+		return api2Versions.containsKey(signature);
+	}
+
+	/**
+	 * @return  ordinal of the highest version that includes the API or -1, if the API is unknown
+	 */
+	public int getMaxVersion(String signature) {
+		BitSet bits = api2Versions.get(signature);
+		return bits == null? -1 : bits.length()-1;
+	}
+
+	public boolean supportsVersion(String signature, int ordinal) {
+		BitSet bits = api2Versions.get(signature);
+		return bits != null && bits.get(ordinal);
+	}
+
+
+	/**
+	 * Load the index for the given lib api json file. Reuses the compiled index if it was compiled from a json file
+	 * with the same length and last modification time, otherwise the json file is parsed and the index is (re-)written.
+	 * @param jsonFile  json output of the library api analysis
+	 */
+	public static LibApiCompatIndex load(File jsonFile) throws IOException {
+		File idxFile = getIndexFile(jsonFile);
+
+		// determined before parsing, i.e. a json file modified in the meantime is re-compiled on next load
+		long jsonLength = jsonFile.length();
+		long jsonLastModified = jsonFile.lastModified();
+
+		if (idxFile.exists()) {
+			LibApiCompatIndex idx = read(idxFile, jsonLength, jsonLastModified);
+			if (idx != null)
+				return idx;
+		}
+
+		LibApiCompatIndex idx = parseJson(jsonFile);
+		idx.write(idxFile, jsonLength, jsonLastModified);
+		return idx;
+	}
+
+	private static File getIndexFile(File jsonFile) {
+		String name = jsonFile.getName();
+		if (name.endsWith(".json"))
+			name = name.substring(0, name.length() - ".json".length());
+		return new File(jsonFile.getParentFile(), INDEX_DIR + File.separator + name + FILE_EXT);
+	}
+
+
+	/**
+	 * Streams the json file, only libName, versions and api2Versions are evaluated
+	 */
+	private static LibApiCompatIndex parseJson(File jsonFile) throws IOException {
+		String libName = null;
+		List<String> versions = null;
+		Map<String, List<String>> api2VersionStrs = new HashMap<String, List<String>>();
+
+		try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(jsonFile), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+
+				if ("libName".equals(name)) {
+					libName = reader.nextString();
+
+				} else if ("versions".equals(name)) {
+					versions = readStringArray(reader);
+
+				} else if ("api2Versions".equals(name)) {
+					reader.beginObject();
+					while (reader.hasNext())
+						api2VersionStrs.put(reader.nextName(), readStringArray(reader));
+					reader.endObject();
+
+				} else
+					reader.skipValue();
+			}
+			reader.endObject();
+		}
+
+		if (libName == null || versions == null)
+			throw new IOException("Invalid lib api compat file: " + jsonFile);
+
+		Map<String, Integer> version2Ordinal = new HashMap<String, Integer>();
+		for (int i = 0; i < versions.size(); i++)
+			version2Ordinal.put(versions.get(i), i);
+
+		Map<String, BitSet> api2Versions = new HashMap<String, BitSet>(api2VersionStrs.size() * 2);
+		for (String api: api2VersionStrs.keySet()) {
+			BitSet bits = new BitSet(versions.size());
+			for (String v: api2VersionStrs.get(api)) {
+				Integer ord = version2Ordinal.get(v);
+				if (ord != null) bits.set(ord);
+			}
+			api2Versions.put(api, bits);
+		}
+
+		return new LibApiCompatIndex(libName, versions.toArray(new String[versions.size()]), api2Versions);
+	}
+
+	private static List<String> readStringArray(JsonReader reader) throws IOException {
+		List<String> result = new ArrayList<String>();
+		reader.beginArray();
+		while (reader.hasNext())
+			result.add(reader.nextString());
+		reader.endArray();
+		return result;
+	}
+
+
+	/*
+	 * Binary index format
+	 */
+
+	private void write(File idxFile, long jsonLength, long jsonLastModified) {
+		if (!idxFile.getParentFile().exists())
+			idxFile.getParentFile().mkdirs();
+
+		File tmp = null;
+		try {
+			tmp = Files.createTempFile(idxFile.getParentFile().toPath(), idxFile.getName(), ".tmp").toFile();
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(jsonLength);
+				out.writeLong(jsonLastModified);
+				out.writeUTF(libName);
+
+				out.writeInt(versions.length);
+				for (String v: versions)
+					out.writeUTF(v);
+
+				out.writeInt(api2Versions.size());
+				for (Map.Entry<String, BitSet> e: api2Versions.entrySet()) {
+					out.writeUTF(e.getKey());
+					long[] words = e.getValue().toLongArray();
+					out.writeShort(words.length);
+					for (long w: words)
+						out.writeLong(w);
+				}
+			}
+
+			Files.move(tmp.toPath(), idxFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// the compat dir might be read-only, the index is then rebuilt on every run
+			logger.debug("Could not write lib api compat index " + idxFile + ": " + Utils.stacktrace2Str(e));
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * @return  the index or null, if the format changed or the index was not compiled from the current json file
+	 */
+	private static LibApiCompatIndex read(File idxFile, long jsonLength, long jsonLastModified) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idxFile), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+				return null;
+
+			if (in.readLong() != jsonLength || in.readLong() != jsonLastModified)
+				return null;
+
+			String libName = in.readUTF();
+
+			String[] versions = new String[in.readInt()];
+			for (int i = 0; i < versions.length; i++)
+				versions[i] = in.readUTF();
+
+			int count = in.readInt();
+			Map<String, BitSet> api2Versions = new HashMap<String, BitSet>(count * 2);
+			for (int i = 0; i < count; i++) {
+				String api = in.readUTF();
+				long[] words = new long[in.readShort()];
+				for (int j = 0; j < words.length; j++)
+					words[j] = in.readLong();
+				api2Versions.put(api, BitSet.valueOf(words));
+			}
+
+			return new LibApiCompatIndex(libName, versions, api2Versions);
+		} catch (IOException e) {
+			logger.warn("Could not read lib api compat index " + idxFile + ": " + Utils.stacktrace2Str(e));
+			return null;
+		}
+	}
+}
@@ -16,13 +16,16 @@
 package de.infsec.tpl.modules.updatability;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.GZIPInputStream;
 
-import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
-import de.infsec.tpl.modules.libapi.LibApiStats;
+import com.google.gson.stream.JsonToken;
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.profile.ProfileMatch;
 import de.infsec.tpl.stats.AppStats;
+import de.infsec.tpl.stats.NdjsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import de.infsec.tpl.utils.Utils;
@@ -32,8 +35,13 @@ import de.infsec.tpl.utils.VersionWrapper;
 public class LibraryUpdatability {
 	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.modules.updatability.LibraryUpdatability.class);
 
-	// libName -> stats
-	private Map<String, LibApiStats.Export> lib2ApiStats = new HashMap<>();
+	// libName -> lib api compat file
+	private Map<String, File> lib2CompatFile = new HashMap<>();
+
+	// libName -> compat index, lazily loaded for matched libraries only (null if not loadable)
+	private Map<String, LibApiCompatIndex> lib2CompatIndex = new HashMap<>();
+
+	private static final int BUFFER_SIZE = 1 << 16;
 
 	private final int FLAG_UP2DATE = 0;                  // already up2date
 	private final int FLAG_NO_UPDATE = -1;               // no update possible without code changes
@@ -50,9 +58,9 @@ public class LibraryUpdatability {
    	 *   	- check for sec vuln (+ vuln data should be read from file rather than hardcoded?)
 	 */
 
-	public LibraryUpdatability(File fdir) {
+	public LibraryUpdatability(AnalysisContext ctx) {
 		// load lib-api compat information
-		loadLibApiCompatData(fdir);
+		loadLibApiCompatData(ctx.libApiCompatDir);
 	}
 
 	public void checkUpdatability(AppStats appStats) {
@@ -69,80 +77,238 @@ public class LibraryUpdatability {
 	}
 
 
+	/**
+	 * Checks the updatability of all fully matched libraries of previously exported app results, i.e. without re-analyzing the apps.
+	 * Supported are json files with a single {@link AppStats} export and ndjson(.gz) files with one export per line
+	 * (see {@link de.infsec.tpl.stats.NdjsonWriter}). Apps are processed one by one while streaming the file.
+	 * Used library methods are only included if the apps were analyzed with the library usage analysis.
+	 * @param resultsFile  the json/ndjson file
+	 */
+	public void checkUpdatability(File resultsFile) throws IOException {
+		InputStream is = new FileInputStream(resultsFile);
+		if (resultsFile.getName().endsWith(".gz"))
+			is = new GZIPInputStream(is, BUFFER_SIZE);
+
+		int apps = 0;
+		int libs = 0;
+		int updatable = 0;
+		int skipped = 0;
+
+		try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8), BUFFER_SIZE))) {
+			reader.setLenient(true);  // ndjson consists of multiple top-level values
+
+			while (reader.peek() != JsonToken.END_DOCUMENT) {
+				StoredApp app = StoredApp.read(reader);
+				if (app == null) {
+					skipped++;
+					continue;
+				}
+				apps++;
+
+				logger.info("");
+				logger.info("== Check library updatability: " + app.fileName + " ==");
+
+				for (StoredMatch m: app.libMatches) {
+					if (m.simScore == ProfileMatch.MATCH_HTREE_FULL) {
+						logger.info("Check: (" + m.libName + "," + m.libVersion + ")");
+						libs++;
+						if (checkLibUpdatability(m.libName, m.libVersion, m.usedLibMethods) > 0)
+							updatable++;
+					}
+				}
+			}
+		}
+
+		if (skipped > 0)
+			logger.warn("Skipped " + skipped + " json values in " + resultsFile.getName() + " that are no stored app results (appInfo and lib_matches)");
+
+		logger.info("");
+		logger.info("Checked " + libs + " libraries in " + apps + " apps from " + resultsFile.getName() + ", " + updatable + " updatable");
+	}
+
+	/**
+	 * @return  true if the file is expected to contain previously exported app results (json, ndjson or ndjson.gz).
+	 *          Plain json files are only collected if passed explicitly (see {@link de.infsec.tpl.TplCLI}), values without
+	 *          appInfo and lib_matches are skipped while reading
+	 */
+	public static boolean isStoredResultsFile(File f) {
+		String name = f.getName();
+		return name.endsWith(".json") || name.endsWith(NdjsonWriter.FILE_EXT) || name.endsWith(NdjsonWriter.FILE_EXT_GZ);
+	}
+
+
+	/*
+	 * Minimal views on AppStats/ProfileMatch exports, only fields required for the updatability check are read
+	 */
+	private static class StoredApp {
+		String fileName = "";
+		List<StoredMatch> libMatches = new ArrayList<>();
+
+		/**
+		 * @return  the next stored app or null, if the next json value is no app results export (the value is then skipped)
+		 */
+		static StoredApp read(JsonReader reader) throws IOException {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				return null;
+			}
+
+			StoredApp app = new StoredApp();
+			boolean hasAppInfo = false;
+			boolean hasLibMatches = false;
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+
+				if ("appInfo".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+					hasAppInfo = true;
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if ("fileName".equals(reader.nextName()))
+							app.fileName = reader.nextString();
+						else
+							reader.skipValue();
+					}
+					reader.endObject();
+
+				} else if ("lib_matches".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+					hasLibMatches = true;
+					reader.beginArray();
+					while (reader.hasNext())
+						app.libMatches.add(StoredMatch.read(reader));
+					reader.endArray();
+
+				} else
+					reader.skipValue();
+			}
+			reader.endObject();
+
+			return hasAppInfo && hasLibMatches? app : null;
+		}
+	}
+
+	private static class StoredMatch {
+		String libName;
+		String libVersion;
+		float simScore;
+		Set<String> usedLibMethods = new TreeSet<>();
+
+		static StoredMatch read(JsonReader reader) throws IOException {
+			StoredMatch m = new StoredMatch();
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+
+				if ("libName".equals(name))
+					m.libName = reader.nextString();
+				else if ("libVersion".equals(name))
+					m.libVersion = reader.nextString();
+				else if ("simScore".equals(name))
+					m.simScore = (float) reader.nextDouble();
+				else if ("usedLibMethods".equals(name)) {
+					reader.beginArray();
+					while (reader.hasNext())
+						m.usedLibMethods.add(reader.nextString());
+					reader.endArray();
+				} else
+					reader.skipValue();
+			}
+			reader.endObject();
+
+			return m;
+		}
+	}
+
+
 	private void loadLibApiCompatData(File fdir) {
 		logger.trace("Load lib api compat data:");
-		Gson gson = new Gson();
 
+		// only locate the compat files (<libName>.json), indices are loaded on demand
 		for (File f : Utils.collectFiles(fdir, new String[]{"json"})) {
-			try {
-				JsonReader reader = new JsonReader(new FileReader(f));
-				LibApiStats.Export libStats = gson.fromJson(reader, LibApiStats.Export.class);
-
-				lib2ApiStats.put(libStats.libName, libStats);
-				logger.trace(Utils.indent() + "# lib: " + libStats.libName + "   # versions: " + libStats.apiDiffs.size());
-			} catch (Exception e) {
-				logger.warn(Utils.stacktrace2Str(e));
+			String libName = f.getName().substring(0, f.getName().length() - ".json".length());
+			lib2CompatFile.put(libName, f);
+			logger.trace(Utils.indent() + "# lib: " + libName);
+		}
+	}
+
+
+	private synchronized LibApiCompatIndex getCompatIndex(String libName) {
+		if (!lib2CompatIndex.containsKey(libName)) {
+			LibApiCompatIndex idx = null;
+
+			if (lib2CompatFile.containsKey(libName)) {
+				try {
+					idx = LibApiCompatIndex.load(lib2CompatFile.get(libName));
+				} catch (Exception e) {
+					logger.warn(Utils.stacktrace2Str(e));
+				}
 			}
+			lib2CompatIndex.put(libName, idx);
 		}
+
+		return lib2CompatIndex.get(libName);
 	}
 
 
 	private int checkLibUpdatability(ProfileMatch pm) {
 		logger.info("Check: " + pm.lib.getLibIdentifier());
-		String libName = pm.lib.description.name;
-		String libVersion = pm.lib.description.version;
+		return checkLibUpdatability(pm.lib.description.name, pm.lib.description.version, pm.usedLibMethods);
+	}
 
+	private int checkLibUpdatability(String libName, String libVersion, Set<String> usedLibMethods) {
 		// do we have compat info
-		if (!lib2ApiStats.containsKey(libName)) {
+		LibApiCompatIndex libstat = getCompatIndex(libName);
+		if (libstat == null) {
 			logger.info(Utils.indent() + ">> No lib api compat info for library: " + libName);
 			return FLAG_NO_LIBSTATS_AVAILABLE;
 		}
 
-		LibApiStats.Export libstat = lib2ApiStats.get(libName);
-
 		// check if already latest version
-		if (libVersion.equals(libstat.versions.get(libstat.versions.size()-1))) {
+		if (libVersion.equals(libstat.getLatestVersion())) {
 			logger.info(Utils.indent() + ">> Library version is already up2date!");
 			return FLAG_UP2DATE;
 		}
 
 		// check if we have used lib methods
-		if (pm.usedLibMethods.isEmpty()) {
+		if (usedLibMethods.isEmpty()) {
 			logger.info(Utils.indent() + ">> No identified used library methods!");
 			return FLAG_NO_USED_METHDOS;
 		}
 
 		// for every API determine max version, then take min version supported by all apis
-		TreeSet<String> maxVersions = new TreeSet<>();
+		int minMaxVersion = Integer.MAX_VALUE;
+
+		for (String used: usedLibMethods) {
+			int maxVersion = libstat.getMaxVersion(used);
 
-		for (String used: pm.usedLibMethods) {
-			if (libstat.api2Versions.containsKey(used)) {
+			if (maxVersion >= 0) {
 				// get max supported version for api (exclude matched version)
-				String maxVersion = libstat.api2Versions.get(used).get(libstat.api2Versions.get(used).size()-1);
-				logger.debug(Utils.indent() + "API: " + used + "   maxVersion: " + maxVersion);
+				logger.debug(Utils.indent() + "API: " + used + "   maxVersion: " + libstat.getVersion(maxVersion));
 
-				if (!maxVersion.equals(libVersion))
-					maxVersions.add(maxVersion);
+				if (!libstat.getVersion(maxVersion).equals(libVersion))
+					minMaxVersion = Math.min(minMaxVersion, maxVersion);
 			} else
 				logger.debug(Utils.indent() + "Could not lookup API: " + used + "  [protected]");
 		}
 
-		if (maxVersions.isEmpty()) {
+		if (minMaxVersion == Integer.MAX_VALUE) {
 			logger.info(Utils.indent() + ">> Library is not updatable");
 			return FLAG_NO_UPDATE;
 		}
 
 		// check if global minVersion is supported by all used apis (= updatable)
-		for (String used: pm.usedLibMethods) {
-			if (libstat.api2Versions.containsKey(used) && !libstat.api2Versions.get(used).contains(maxVersions.first())) {
-				logger.info(Utils.indent() + ">> API: " + used + " does not support min version " + maxVersions.first() + ". Library is not updatable.");
+		for (String used: usedLibMethods) {
+			if (libstat.containsApi(used) && !libstat.supportsVersion(used, minMaxVersion)) {
+				logger.info(Utils.indent() + ">> API: " + used + " does not support min version " + libstat.getVersion(minMaxVersion) + ". Library is not updatable.");
 				return FLAG_NO_UPDATE;
 			}
 		}
 
 		// updatable by how many versions
-		int vdiff = libstat.versions.indexOf(maxVersions.first()) - libstat.versions.indexOf(VersionWrapper.valueOf(libVersion).toString());
-		logger.info(Utils.indent() + ">> Library is updatable by " + vdiff + " versions (" + maxVersions.first() + ")");
+		int vdiff = minMaxVersion - libstat.getOrdinal(VersionWrapper.valueOf(libVersion).toString());
+		logger.info(Utils.indent() + ">> Library is updatable by " + vdiff + " versions (" + libstat.getVersion(minMaxVersion) + ")");
 		return vdiff;
 	}
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.pkg;
+
+import de.infsec.tpl.pkg.PackageUtils.RELATIONSHIP;
+
+
+/**
+ * Immutable, tokenized package name, e.g. com.foo.bar -&gt; [com, foo, bar]
+ * Depth, the hashes of all fragments and the hashes of all prefixes are computed once on
+ * construction. Prefix, depth and relationship tests thus compare hashes first and do not allocate.
+ * Prefix tests are fragment based, i.e. com.foobar is not a sub package of com.foo. This is the definition
+ * of sub packages used for all package prefix tests (cf. {@link PackageUtils#testRelationship(String, String)}).
+ */
+public final class PackageName implements Comparable<PackageName> {
+	private final String name;
+	private final String[] fragments;
+	private final int[] hashes;          // hashes[i] = hash of fragment i
+	private final long[] prefixHashes;   // prefixHashes[i] = hash of fragments 0..i
+
+
+	private PackageName(String name, String[] fragments, int[] hashes) {
+		this.name = name;
+		this.fragments = fragments;
+		this.hashes = hashes;
+		this.prefixHashes = new long[hashes.length];
+
+		long h = 17;
+		for (int i = 0; i < hashes.length; i++) {
+			h = h * 0x9E3779B97F4A7C15L + hashes[i];
+			prefixHashes[i] = h;
+		}
+	}
+
+
+	/**
+	 * @param packageName  package name without class, e.g. "com.foo.bar". The default package "" consists of
+	 *   a single empty fragment, i.e. it has depth 1 like in {@link PackageUtils#packageDepth(String)}
+	 * @return  the tokenized {@link PackageName}
+	 */
+	public static PackageName of(String packageName) {
+		int depth = 1;
+		for (int i = 0; i < packageName.length(); i++)
+			if (packageName.charAt(i) == '.') depth++;
+
+		String[] fragments = new String[depth];
+		int[] hashes = new int[depth];
+		int start = 0;
+		for (int i = 0; i < depth; i++) {
+			int end = packageName.indexOf('.', start);
+			if (end < 0) end = packageName.length();
+			fragments[i] = packageName.substring(start, end);
+			hashes[i] = fragments[i].hashCode();
+			start = end + 1;
+		}
+
+		return new PackageName(packageName, fragments, hashes);
+	}
+
+
+	public int depth() {
+		return hashes.length;
+	}
+
+	/**
+	 * @param idx  fragment index, 0 &lt;= idx &lt; depth()
+	 * @return  the package fragment at the given position
+	 */
+	public String fragment(int idx) {
+		return fragments[idx];
+	}
+
+	/**
+	 * @param depth  number of leading fragments
+	 * @return  the hash of the first depth fragments, 0 for depth 0
+	 */
+	public long prefixHash(int depth) {
+		return depth == 0? 0 : prefixHashes[depth-1];
+	}
+
+
+	/**
+	 * Tests whether this package is equal to or a sub package of the provided package,
+	 * i.e. whether all fragments of prefix match the leading fragments of this package.
+	 * In contrast to {@link String#startsWith(String)} com.foobar does not start with com.foo.
+	 */
+	public boolean startsWith(PackageName prefix) {
+		int depth = prefix.hashes.length;
+		if (depth > hashes.length || prefixHash(depth) != prefix.prefixHash(depth))
+			return false;
+
+		for (int i = depth-1; i >= 0; i--)
+			if (hashes[i] != prefix.hashes[i] || !fragments[i].equals(prefix.fragments[i])) return false;
+		return true;
+	}
+
+	/**
+	 * @return  relationship of this package to the provided one
+	 */
+	public RELATIONSHIP testRelationship(PackageName other) {
+		if (hashes.length > other.hashes.length && startsWith(other))
+			return RELATIONSHIP.PARENT;
+		else if (other.hashes.length > hashes.length && other.startsWith(this))
+			return RELATIONSHIP.CHILD;
+		else if (equals(other))
+			return RELATIONSHIP.SIBLING;
+		else
+			return RELATIONSHIP.UNRELATED;
+	}
+
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PackageName))
+			return false;
+
+		PackageName pn = (PackageName) obj;
+		return pn.hashes.length == hashes.length && startsWith(pn);
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(prefixHash(hashes.length));
+	}
+
+	@Override
+	public int compareTo(PackageName pn) {
+		return name.compareTo(pn.name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
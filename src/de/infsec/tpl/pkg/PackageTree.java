@@ -17,7 +17,6 @@ package de.infsec.tpl.pkg;
 import java.io.Serializable;
 import java.util.*;
 
-import de.infsec.tpl.config.LibScoutConfig;
 import de.infsec.tpl.hashtree.node.PackageNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,20 +33,51 @@ public class PackageTree implements Serializable {
 	
 	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.pkg.PackageTree.class);
 	private Node rootNode;
-	
+
+	// cached tree queries (not serialized), invalidated on every tree modification
+	private transient boolean aggregatesValid = false;
+	private transient boolean rootPackageValid = false;
+	private transient String rootPackage;
+	private transient Map<String, Integer> packages;
+	private transient Set<String> allPackages;
+
 	public class Node implements Serializable {
 		private static final long serialVersionUID = -2117889548993263279L;
 		
 		public String name;
 		public int clazzCount;
 		public List<Node> childs;
-		
+
+		// child name -> child node, lazily (re-)built from childs
+		private transient Map<String, Node> childIndex;
+
+		// subtree aggregates (incl. this node), valid if aggregatesValid is set
+		private transient int subtreePackageCount;
+		private transient int subtreeNonEmptyPackageCount;
+		private transient int subtreeClazzCount;
+
 		public Node(String name) {
 			this.name = name;
 			this.clazzCount = 0;
 			this.childs = new ArrayList<Node>();
 		}
-		
+
+		Node getChild(String name) {
+			// child names are unique, i.e. a size mismatch indicates that childs has been modified directly
+			if (childIndex == null || childIndex.size() != childs.size()) {
+				childIndex = new HashMap<String, Node>(childs.size() * 2);
+				for (Node child: childs)
+					childIndex.put(child.name, child);
+			}
+			return childIndex.get(name);
+		}
+
+		void addChild(Node child) {
+			childs.add(child);
+			if (childIndex != null)
+				childIndex.put(child.name, child);
+		}
+
 		public int getNumberOfLeafNodes() {
 			int result = 0;
 			for (Node child: childs)
@@ -62,8 +92,8 @@ public class PackageTree implements Serializable {
 			return ((Node) obj).name.equals(this.name);
 		}
 		
-		public void print(boolean includeClazzCount) {
-			print("", true, includeClazzCount, drawingCharacters.get(LibScoutConfig.PckgTree.useAsciiRendering));
+		public void print(boolean includeClazzCount, boolean asciiRendering) {
+			print("", true, includeClazzCount, drawingCharacters.get(asciiRendering));
 		}
 
 		final Map<Boolean, String[]> drawingCharacters = new HashMap<Boolean, String[]>() {{
@@ -169,13 +199,17 @@ public class PackageTree implements Serializable {
 		return getRootPackage();
 	}
 	
-	public void print(boolean includeClazzCount) {
+	/**
+	 * @param includeClazzCount  whether to print the number of classes per package
+	 * @param asciiRendering  render with ascii instead of unicode box-drawing characters
+	 */
+	public void print(boolean includeClazzCount, boolean asciiRendering) {
 		logger.info("Root Package: " + (getRootPackage() == null? " - none -" : getRootPackage()));
 		
 		if (rootNode.childs.size() == 1 && !rootNode.hasClasses())
-			rootNode.childs.get(0).print(includeClazzCount);
+			rootNode.childs.get(0).print(includeClazzCount, asciiRendering);
 		else
-			rootNode.print(includeClazzCount);
+			rootNode.print(includeClazzCount, asciiRendering);
 	}
 
 	/**
@@ -183,7 +217,9 @@ public class PackageTree implements Serializable {
 	 * @return  a mapping from package name to number of included classes
 	 */
 	public Map<String, Integer> getPackages() {
-		return getPackages(rootNode, "", false);
+		if (packages == null)
+			packages = Collections.unmodifiableMap(getPackages(rootNode, "", false));
+		return packages;
 	}
 	
 	/**
@@ -191,19 +227,51 @@ public class PackageTree implements Serializable {
 	 * @return  an ordered set of package names
 	 */
 	public Set<String> getAllPackages() {
-		return getPackages(rootNode, "", true).keySet();
+		if (allPackages == null)
+			allPackages = Collections.unmodifiableSet(getPackages(rootNode, "", true).keySet());
+		return allPackages;
 	}
 
 	public int getNumberOfNonEmptyPackages() {
-		return getPackages().keySet().size();
+		computeAggregates();
+		return rootNode.subtreeNonEmptyPackageCount;
 	}
 	
 	public int getNumberOfAppClasses() {
-		Map<String, Integer> packages = getPackages();
-		int count = 0;
-		for (int c: packages.values())
-			count += c;
-		return count;
+		computeAggregates();
+		return rootNode.subtreeClazzCount;
+	}
+
+
+	/**
+	 * Drops all cached query results, must be called on every modification of the tree
+	 */
+	private void invalidate() {
+		aggregatesValid = false;
+		rootPackageValid = false;
+		rootPackage = null;
+		packages = null;
+		allPackages = null;
+	}
+
+	private void computeAggregates() {
+		if (!aggregatesValid) {
+			computeAggregates(rootNode);
+			aggregatesValid = true;
+		}
+	}
+
+	private static void computeAggregates(Node n) {
+		n.subtreePackageCount = 1;
+		n.subtreeNonEmptyPackageCount = n.hasClasses()? 1 : 0;
+		n.subtreeClazzCount = n.clazzCount;
+
+		for (Node c: n.childs) {
+			computeAggregates(c);
+			n.subtreePackageCount += c.subtreePackageCount;
+			n.subtreeNonEmptyPackageCount += c.subtreeNonEmptyPackageCount;
+			n.subtreeClazzCount += c.subtreeClazzCount;
+		}
 	}
 
 	
@@ -213,6 +281,14 @@ public class PackageTree implements Serializable {
 	 * @return  the unique root package name or null otherwise
 	 */
 	public String getRootPackage() {
+		if (!rootPackageValid) {
+			rootPackage = computeRootPackage();
+			rootPackageValid = true;
+		}
+		return rootPackage;
+	}
+
+	private String computeRootPackage() {
 		String rootPackage = "";
 		Node curNode = rootNode;
 
@@ -231,8 +307,9 @@ public class PackageTree implements Serializable {
 			int id = 0;
 			int max = 0;
 			// determine largest subtree in terms of packages
+			computeAggregates();
 			for (int i = 0; i < curNode.childs.size(); i++) {
-				int tmp = getPackages(curNode.childs.get(i), "", true).size();
+				int tmp = curNode.childs.get(i).subtreePackageCount;
 				if (tmp > max) {
 					id = i;
 					max = tmp;
@@ -264,17 +341,20 @@ public class PackageTree implements Serializable {
 	
 	private Map<String, Integer> getPackages(Node n, String curPath, boolean dumpAllPackages) {
 		TreeMap<String, Integer> res = new TreeMap<String, Integer>();
-		
+		collectPackages(n, curPath, dumpAllPackages, res);
+		return res;
+	}
+
+	private void collectPackages(Node n, String curPath, boolean dumpAllPackages, Map<String, Integer> res) {
 		if (n.hasClasses() || dumpAllPackages)
 			res.put(curPath + n.name, n.clazzCount);
 
 		if (!n.isLeaf()) {
+			String childPath = curPath + (n.name.equals("Root")? "" : n.name + ".");
 			for (Node c: n.childs) {
-				res.putAll(getPackages(c, curPath + (n.name.equals("Root")? "" : n.name + "."), dumpAllPackages));
+				collectPackages(c, childPath, dumpAllPackages, res);
 			}
 		}
-
-		return res;
 	}
 
 
@@ -316,24 +396,20 @@ public class PackageTree implements Serializable {
 	}
 	
 	public Node locateNodeByPackage(String packageName) {
-		List<String> struct = PackageUtils.parsePackage(packageName, true);   // TODO: check second arg
+		return locateNodeByPackage(PackageName.of(packageName));
+	}
 
+	public Node locateNodeByPackage(PackageName packageName) {
 		Node curNode = rootNode;
-		for (int i = 0; i < struct.size(); i++) {
-			Node n = matchChilds(curNode, struct.get(i));
-			
-			if (n != null) {
-				curNode = n; 
-			} else {
-				return null;
-			}
+		for (int i = 0; i < packageName.depth() && curNode != null; i++) {
+			curNode = matchChilds(curNode, packageName.fragment(i));
 		}
-	
+
 		return curNode;
 	}
 	
 	public boolean containsPackage(String packageName) {
-		return locateNodeByPackage(packageName) != null;
+		return locateNodeByPackage(PackageName.of(packageName)) != null;
 	}
 
 	
@@ -349,6 +425,8 @@ public class PackageTree implements Serializable {
 	}
 
 	private boolean update(List<String> packageStruct) {
+		invalidate();
+
 		// update
 		Node curNode = rootNode;
 		if (packageStruct.isEmpty())
@@ -361,7 +439,7 @@ public class PackageTree implements Serializable {
 					curNode = n; 
 				} else {
 					Node newNode = new Node(packageStruct.get(i));
-					curNode.childs.add(newNode);
+					curNode.addChild(newNode);
 					curNode = newNode;
 				}
 				
@@ -377,11 +455,7 @@ public class PackageTree implements Serializable {
 	
 	
 	private Node matchChilds(Node n, String str) {
-		for (Node node: n.childs) {
-			if (node.name.equals(str))
-				return node;
-		}
-		return null;
+		return n.getChild(str);
 	}
 	
 	
@@ -401,7 +475,8 @@ public class PackageTree implements Serializable {
 	
 	private boolean updateClazzCount(IClass clazz) {
 		List<String> struct = PackageUtils.parsePackage(clazz);
-		
+		invalidate();
+
 		// update
 		Node curNode = rootNode;
 		for (int i = 0; i < struct.size(); i++) {
@@ -511,7 +586,7 @@ public class PackageTree implements Serializable {
     	    	result.add(pt);
 
     	    	logger.debug("DUMP OF SUBTREE:");
-    	    	if (logger.isDebugEnabled()) pt.print(true);  // TODO DEBUG
+    	    	if (logger.isDebugEnabled()) pt.print(true, false);  // TODO DEBUG
     		}
     	}
     	
@@ -602,29 +677,30 @@ public class PackageTree implements Serializable {
     		else {
     			curNode = n;
     			Node newNode = newNodeInstance(curNode);
-    			curSubTreeNode.childs.add(newNode);
+    			curSubTreeNode.addChild(newNode);
     			curSubTreeNode = newNode;
     		}
     	}
 
     	// copy any remaining subtree
-    	copySubTree(curNode, curSubTreeNode);
+    	subTree.copySubTree(curNode, curSubTreeNode);
     	
     	return subTree;
     }
 
     
 	/**
-	 * Copies the entire subtree from one node to another node 
+	 * Copies the entire subtree from one node to another node of this tree
 	 * @param fromTreeNode the {@Node} to be copied from
 	 * @param toTreeNode the {@Node} to copy to
 	 */
     public void copySubTree(Node fromTreeNode, Node toTreeNode) {
+    	invalidate();
     	for (Node child: fromTreeNode.childs) {
     		Node copyChild = newNodeInstance(child);
     		if (!child.isLeaf())
     			copySubTree(child, copyChild);
-    		toTreeNode.childs.add(copyChild);
+    		toTreeNode.addChild(copyChild);
     	}
     }
  
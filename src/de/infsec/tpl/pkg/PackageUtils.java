@@ -73,8 +73,10 @@ public class PackageUtils {
 	}
 
 	public static int packageDepth(String pckgName) {
-		String[] struct = pckgName.split("\\.");
-		return struct.length;
+		int depth = 1;
+		for (int i = 0; i < pckgName.length(); i++)
+			if (pckgName.charAt(i) == '.') depth++;
+		return depth;
 	}
 	
 	public static int getMaxDepth(Collection<String> packageNames) {
@@ -88,31 +90,24 @@ public class PackageUtils {
 	}
 	
 	public static String getSubPackageOfDepth(String packageName, int depth) {
-		List<String> token = parsePackage(packageName, true);  // TODO: recheck second arg
-		if (token.size()-1 >= depth)
-			return Utils.join(token.subList(0, depth), ".");
-		else
+		if (packageDepth(packageName) <= depth)
 			return null;
+
+		int end = -1;
+		for (int i = 0; i < depth; i++)
+			end = packageName.indexOf('.', end + 1);
+		return depth == 0? "" : packageName.substring(0, end);
 	}
 	
 	/**
 	 * Tests relationship of package1 to package2.
+	 * Package prefixes are compared by fragments, see {@link PackageName#testRelationship(PackageName)}
 	 * @param packageName1  package name without class
 	 * @param packageName2  package name without class
 	 * @return @{link RELATIONSHIP}
 	 */
 	public static RELATIONSHIP testRelationship(String packageName1, String packageName2) {
-		int p1Depth = packageDepth(packageName1);
-		int p2Depth = packageDepth(packageName2);
-		
-		if (packageName1.startsWith(packageName2) && p1Depth > p2Depth)
-			return RELATIONSHIP.PARENT;
-		else if (packageName2.startsWith(packageName1) && p2Depth > p1Depth)
-			return RELATIONSHIP.CHILD;
-		else if (packageName1.equals(packageName2))
-			return RELATIONSHIP.SIBLING;
-		else
-			return RELATIONSHIP.UNRELATED;
+		return PackageName.of(packageName1).testRelationship(PackageName.of(packageName2));
 	}
 	
 	
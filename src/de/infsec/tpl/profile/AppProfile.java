@@ -17,6 +17,7 @@ package de.infsec.tpl.profile;
 import java.io.Serializable;
 import java.util.List;
 
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.hashtree.HashTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,17 +37,17 @@ public class AppProfile extends Profile implements Serializable {
 		super(pTree, hashTrees);
 	}
 
-	public static AppProfile create(IClassHierarchy cha) {
+	public static AppProfile create(IClassHierarchy cha, AnalysisContext ctx) {
 		long startTime = System.currentTimeMillis();
 		
 		// generate app package tree
-		PackageTree ptree = Profile.generatePackageTree(cha);
+		PackageTree ptree = Profile.generatePackageTree(cha, ctx);
 		logger.info("- generated app package tree (in " + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - startTime) + ")");
 		logger.info("");
 		
 		// generate app hash trees
 		startTime = System.currentTimeMillis();
-		List<HashTree> hashTrees = Profile.generateHashTrees(cha);
+		List<HashTree> hashTrees = Profile.generateHashTrees(cha, ctx);
 		logger.info("- generated app hash trees (in " + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - startTime) + ")");
 		logger.info("");
 		
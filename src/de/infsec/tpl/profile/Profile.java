@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.hashtree.HashTree;
 import de.infsec.tpl.modules.libprofiler.LibraryProfiler;
 import org.apache.commons.cli.ParseException;
@@ -48,10 +49,10 @@ public abstract class Profile implements Serializable {
 		this.hashTrees = hashTrees;
 	}
 	
-	public static PackageTree generatePackageTree(IClassHierarchy cha) {
+	public static PackageTree generatePackageTree(IClassHierarchy cha, AnalysisContext ctx) {
 		logger.info("= PackageTree =");
 		PackageTree tree = PackageTree.make(cha, true);
-		tree.print(true);
+		tree.print(true, ctx.asciiRendering);
 		
 		logger.debug("");
 		logger.debug("Package names (included classes):");
@@ -65,9 +66,9 @@ public abstract class Profile implements Serializable {
 	}
 		
 	
-	public static List<HashTree> generateHashTrees(final IClassHierarchy cha) {
+	public static List<HashTree> generateHashTrees(final IClassHierarchy cha, AnalysisContext ctx) {
 		HashTree ht = new HashTree();
-		ht.generate(cha);
+		ht.generate(cha, !ctx.serialHashing);
 		return Collections.singletonList(ht);
 	}
 
@@ -22,11 +22,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
-import de.infsec.tpl.config.LibScoutConfig;
+import de.infsec.tpl.config.AnalysisContext;
 import de.infsec.tpl.hashtree.HashTree;
 import de.infsec.tpl.hashtree.TreeConfig;
 import de.infsec.tpl.hashtree.node.PackageNode;
-import de.infsec.tpl.stats.Exportable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +33,7 @@ import de.infsec.tpl.pkg.PackageTree;
 import de.infsec.tpl.utils.Utils;
 
 
-public class ProfileMatch implements Exportable, Serializable {
+public class ProfileMatch implements Serializable {
 	private static final long serialVersionUID = 62089083096037815L;
 	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.profile.ProfileMatch.class);
 
@@ -110,7 +109,7 @@ public class ProfileMatch implements Exportable, Serializable {
 		// if lib code usage analysis is enabled, store normalized (i.e. if matched root packages differs from original root package) lib method signatures used
 		public Set<String> usedLibMethods = new TreeSet<String>();
 
-		public Export(ProfileMatch pm) {
+		public Export(ProfileMatch pm, boolean showComments) {
 			this.libName = pm.lib.description.name;
 			this.libVersion = pm.lib.description.version;
 			this.isOriginalPackageName = !pm.isLibObfuscated();
@@ -119,16 +118,18 @@ public class ProfileMatch implements Exportable, Serializable {
 			this.includesSecurityVulnerability = pm.lib.description.comment.contains("[SECURITY]");
 			this.includesSecurityVulnerabilityFix = pm.lib.description.comment.contains("[SECURITY-FIX]");
 			this.simScore = pm.getHighestSimScore().simScore;
-			this.comment = LibScoutConfig.Reporting.showComments? pm.lib.description.comment : "";
+			this.comment = showComments? pm.lib.description.comment : "";
 
 			if (!pm.usedLibMethods.isEmpty())
 				this.usedLibMethods = pm.usedLibMethods;
 		}
 	}
 
-	@Override
-	public Export export() {
-		return new Export(this);
+	/**
+	 * @param showComments  whether to include the library comment
+	 */
+	public Export export(boolean showComments) {
+		return new Export(this, showComments);
 	}
 
 	public void addResult(HTreeMatch res) {
@@ -169,13 +170,13 @@ public class ProfileMatch implements Exportable, Serializable {
 	}
 	
 
-	public void print() {
+	public void print(AnalysisContext ctx) {
 		final String VULN_INDICATOR = "[SECURITY]";   // indicates that this version includes a security vulnerability
 		final String VULN_FIX_INDICATOR = "[SECURITY-FIX]";   // indicates that this version includes a fix for a security vulnerability
 
  		for (String str: lib.description.getDescription()) {
 			if (str.contains("comment:") &&
-			   (!LibScoutConfig.Reporting.showComments && !(str.contains(VULN_INDICATOR) || str.contains(VULN_FIX_INDICATOR)))) continue;
+			   (!ctx.showComments && !(str.contains(VULN_INDICATOR) || str.contains(VULN_FIX_INDICATOR)))) continue;
 
 			if (str.contains("version") && lib.isDeprecatedLib())
 				str += "  [OLD VERSION]";    // TODO store in db?
@@ -195,7 +196,7 @@ public class ProfileMatch implements Exportable, Serializable {
 		}
 		
 		if (logger.isTraceEnabled())
-			getMatchedPackageTree().print(false);
+			getMatchedPackageTree().print(false, ctx.asciiRendering);
 		logger.info("");
 	}
 
@@ -30,6 +30,7 @@ import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.TypeReference;
 
 import de.infsec.tpl.utils.AndroidClassType;
+import de.infsec.tpl.utils.ApkContainer;
 import de.infsec.tpl.utils.MapUtils;
 import de.infsec.tpl.utils.Utils;
 import de.infsec.tpl.utils.WalaUtils;
@@ -311,7 +312,19 @@ public class LayoutFileParser extends AbstractResourceParser {
 	 * @param fileName The APK file in which to look for user controls
 	 */
 	public void parseLayoutFile(final IClassHierarchy cha, final String fileName) {
-		handleAndroidResourceFiles(fileName, /*classes,*/ null, new IResourceHandler() {
+		handleAndroidResourceFiles(fileName, /*classes,*/ null, createLayoutHandler(cha));
+	}
+
+	/**
+	 * Parses all layout XML files of an already opened APK file
+	 * @param apk The opened APK file in which to look for user controls
+	 */
+	public void parseLayoutFile(final IClassHierarchy cha, final ApkContainer apk) {
+		handleAndroidResourceFiles(apk, null, createLayoutHandler(cha));
+	}
+
+	private IResourceHandler createLayoutHandler(final IClassHierarchy cha) {
+		return new IResourceHandler() {
 		
 			@Override
 			public void handleResourceFile(final String fileName, Set<String> fileNameFilter, InputStream stream) {
@@ -373,7 +386,7 @@ public class LayoutFileParser extends AbstractResourceParser {
 				}
 			}
 
-		});
+		};
 	}
 
 
@@ -17,6 +17,9 @@ package de.infsec.tpl.stats;
 import java.io.File;
 import java.util.*;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
 import de.infsec.tpl.hashtree.HashTree;
 import de.infsec.tpl.manifest.ProcessManifest;
 import de.infsec.tpl.pkg.PackageTree;
@@ -37,10 +40,13 @@ public class AppStats implements Exportable {
 	public Map<String,String> packageOnlyMatches = new TreeMap<String,String>();  // lib name -> root package
 	
 	public long processingTime;
+
+	private final boolean showComments;  // include library comments in the export
 	
 	
-	public AppStats(File appFile) {
+	public AppStats(File appFile, boolean showComments) {
 		this.appFile  = appFile;
+		this.showComments = showComments;
 	}
 
 	@Override
@@ -48,20 +54,43 @@ public class AppStats implements Exportable {
 		return new Export(this);
 	}
 
+	/**
+	 * Export for an app whose code is identical to an already analyzed app. The library results of the
+	 * stored export are kept, app metadata and processing time are taken from this app.
+	 * @param storedExport  the json export of the already analyzed app
+	 */
+	public JsonObject export(JsonObject storedExport) {
+		storedExport.add("appInfo", new Gson().toJsonTree(new AppInfo(this)));
+		storedExport.addProperty("stats_processingTime", processingTime);
+		return storedExport;
+	}
 
-	private class Export {
-		 class AppInfo {
-			String fileName;
-			String appName;
-			String packagename;
-			Set<String> permissions;
-			int versionCode;
-			int versionMinSDK;
-			int versionTargetSDK;
-			String sharedUserId;
+
+	private static class AppInfo {
+		String fileName;
+		String appName;
+		String packagename;
+		Set<String> permissions;
+		int versionCode;
+		int versionMinSDK;
+		int versionTargetSDK;
+		String sharedUserId;
+
+		AppInfo(AppStats stats) {
+			this.fileName = stats.appFile.getName();
+			this.appName = stats.manifest.getApplicationName();
+			this.packagename = stats.manifest.getPackageName();
+			this.permissions = stats.manifest.getPermissions();
+			this.versionCode = stats.manifest.getVersionCode();
+			this.versionMinSDK = stats.manifest.getMinSdkVersion();
+			this.versionTargetSDK = stats.manifest.getTargetSdkVersion();
+			this.sharedUserId = stats.manifest.getSharedUserId();
 		}
+	}
 
-		AppInfo appInfo = new AppInfo();
+
+	private class Export {
+		AppInfo appInfo;
 
 		int stats_packageCount;
 		int stats_classCount;
@@ -74,14 +103,7 @@ public class AppStats implements Exportable {
 		Map<String, String> lib_packageOnlyMatches = new TreeMap<String,String>();
 
 		public Export(AppStats stats) {
-			this.appInfo.fileName = stats.appFile.getName();
-			this.appInfo.appName = stats.manifest.getApplicationName();
-			this.appInfo.packagename = stats.manifest.getPackageName();
-			this.appInfo.permissions = stats.manifest.getPermissions();
-			this.appInfo.versionCode = stats.manifest.getVersionCode();
-			this.appInfo.versionMinSDK = stats.manifest.getMinSdkVersion();
-			this.appInfo.versionTargetSDK = stats.manifest.getTargetSdkVersion();
-			this.appInfo.sharedUserId = stats.manifest.getSharedUserId();
+			this.appInfo = new AppInfo(stats);
 
 			this.stats_packageCount = stats.pTree.getNumberOfNonEmptyPackages();
 			this.stats_classCount = stats.pTree.getNumberOfAppClasses();
@@ -127,7 +149,7 @@ public class AppStats implements Exportable {
 			// save the PM's that are to be exported
 			for (String libName: exportedPMatches.keySet()) {
 				for (ProfileMatch pm: exportedPMatches.get(libName)) {
-					this.lib_matches.add(pm.export());
+					this.lib_matches.add(pm.export(stats.showComments));
 					libsMatched.add(pm.lib.description.name);
 				}
 			}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.stats;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import de.infsec.tpl.utils.Utils;
+
+
+/**
+ * Result sink that appends one compact JSON object per line (NDJSON) to a sequence of files
+ * <pre>  &lt;dir&gt;/&lt;prefix&gt;-&lt;timestamp&gt;-&lt;seq&gt;.ndjson[.gz]</pre>
+ * Files are rotated after a fixed number of records. Serialization happens on the caller thread,
+ * disk I/O is done by a single background thread via a bounded queue (callers block if the writer falls behind).
+ * Every file is a complete (gzip) stream once it is rotated or the writer is closed.
+ */
+public class NdjsonWriter implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.stats.NdjsonWriter.class);
+
+	public static final String FILE_EXT = ".ndjson";
+	public static final String FILE_EXT_GZ = FILE_EXT + ".gz";
+
+	private static final int QUEUE_SIZE = 1024;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String EOF = new String("EOF");  // poison pill, compared by identity
+
+	private final File outputDir;
+	private final String prefix;
+	private final String timestamp;
+	private final int maxRecordsPerFile;
+	private final boolean compress;
+
+	private final Gson gson = new GsonBuilder().create();
+	private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+	private final Thread writerThread;
+
+	private volatile IOException writeError;
+	private boolean closed = false;
+
+	// only accessed by the writer thread
+	private Writer out;
+	private int fileIdx = 0;
+	private int recordsInFile = 0;
+
+
+	/**
+	 * @param outputDir  directory to write the ndjson files to (created if not existing)
+	 * @param prefix  file name prefix, e.g. "appStats"
+	 * @param maxRecordsPerFile  number of lines after which a new file is started
+	 * @param compress  if true, files are gzip compressed
+	 */
+	public NdjsonWriter(File outputDir, String prefix, int maxRecordsPerFile, boolean compress) {
+		this.outputDir = outputDir;
+		this.prefix = prefix;
+		this.timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		this.maxRecordsPerFile = Math.max(1, maxRecordsPerFile);
+		this.compress = compress;
+
+		if (!outputDir.exists()) outputDir.mkdirs();
+
+		this.writerThread = new Thread(this::drain, "ndjson-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+
+	/**
+	 * Serializes the object to a single JSON line and enqueues it for writing
+	 * @param obj  the object to be serialized, typically the result of {@link Exportable#export()}
+	 * @throws IOException if a previous write failed or the writer has already been closed
+	 */
+	public void write(Object obj) throws IOException {
+		String line = gson.toJson(obj);
+
+		synchronized (this) {
+			if (closed) throw new IOException("NdjsonWriter already closed");
+		}
+		checkError();
+
+		try {
+			queue.put(line);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while enqueuing json record", e);
+		}
+	}
+
+
+	/**
+	 * Flushes all pending records and closes the current file. Subsequent writes fail.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+		}
+
+		try {
+			queue.put(EOF);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing NdjsonWriter", e);
+		}
+
+		checkError();
+		logger.info("Closed ndjson output (" + fileIdx + " file(s) in " + outputDir + ")");
+	}
+
+
+	private void checkError() throws IOException {
+		if (writeError != null)
+			throw new IOException("Could not write ndjson output", writeError);
+	}
+
+
+	private void drain() {
+		try {
+			while (true) {
+				String line = queue.take();
+				if (line == EOF) break;
+				if (writeError != null) continue;  // keep draining so that producers do not block forever
+
+				try {
+					append(line);
+				} catch (IOException e) {
+					writeError = e;
+					logger.warn("Could not write ndjson record: " + Utils.stacktrace2Str(e));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				closeCurrentFile();
+			} catch (IOException e) {
+				if (writeError == null) writeError = e;
+			}
+		}
+	}
+
+
+	private void append(String line) throws IOException {
+		if (out == null || recordsInFile >= maxRecordsPerFile) {
+			closeCurrentFile();
+			openNextFile();
+		}
+
+		out.write(line);
+		out.write('\n');
+		recordsInFile++;
+	}
+
+
+	private void openNextFile() throws IOException {
+		File f = new File(outputDir, prefix + "-" + timestamp + "-" + String.format("%05d", fileIdx++) + (compress? FILE_EXT_GZ : FILE_EXT));
+		OutputStream os = new FileOutputStream(f);
+		if (compress)
+			os = new GZIPOutputStream(os, BUFFER_SIZE);
+
+		out = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), BUFFER_SIZE);
+		recordsInFile = 0;
+		logger.debug("Write ndjson records to " + f);
+	}
+
+
+	private void closeCurrentFile() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+}
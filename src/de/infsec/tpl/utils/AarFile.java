@@ -14,15 +14,14 @@
 
 package de.infsec.tpl.utils;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+
+import com.ibm.wala.classLoader.Module;
 
 
 /**
@@ -39,81 +38,33 @@ import java.util.zip.ZipFile;
  *    - /lint.jar (optional)
  * These entries are directly at the root of the zip file.
  * The R.txt file is the output of aapt with --output-text-symbols.
+ *
+ * The classes.jar is directly read from the aar (see {@link #getClassesModule()}), i.e. it is not extracted to a tmp file.
  */
 
 public class AarFile extends JarFile {
 	public static final String CLASSES_JAR = "classes.jar";
-	private File jarFile;
 
 	public AarFile(File file) throws ZipException, IOException, ClassNotFoundException {
 		super(file);
-		this.jarFile = extractClassesJar(file, new File(System.getProperty("java.io.tmpdir")));		
 	}
 	
 	public AarFile(String fileName) throws ZipException, IOException, ClassNotFoundException {
 		this(new File(fileName));
 	}
 	
-	public JarFile getJarFile() throws IOException {
-		return new JarFile(this.jarFile);
-	}
-	
-	/*
-	@Override
-	public Enumeration<JarEntry> entries() {
-		try (JarFile jf = new JarFile(jarFile)) {
-			return jf.entries();
-		} catch (IOException e) {}
-		
-		return Collections.emptyEnumeration();
-	}*/
-	
-	/** 
-	 * Extracts a zip file specified by the zipFilePath to a directory specified by
-	 * destDirectory (will be created if does not exists)
-	 * @param apkFile
-	 * @param tmpDir
-	 * @throws IOException
-	 */  
-	public File extractClassesJar(File aarFile, File tmpDir) throws IOException {
-		try (ZipFile zip = new ZipFile(aarFile)) {
-			ZipEntry entry = zip.getEntry(CLASSES_JAR);	
+	/**
+	 * Reads the classes of the nested classes.jar into memory
+	 * @return  a module that can be directly added to an {@link com.ibm.wala.ipa.callgraph.AnalysisScope}
+	 * @throws IOException if the aar has no classes.jar or it could not be read
+	 */
+	public Module getClassesModule() throws IOException {
+		ZipEntry entry = getEntry(CLASSES_JAR);
+		if (entry == null || entry.isDirectory())
+			throw new IOException("Could not find " + CLASSES_JAR + " in " + getName());
 
-			if (entry != null) {
-				File outDir = new File(tmpDir + File.separator + "jarTmp" + File.separator + aarFile.getName().replace(".aar", ""));
-				if (!outDir.exists()) outDir.mkdirs();
-				
-				File outFile = new File(outDir + File.separator + entry.getName());
-				
-     			if (!entry.isDirectory()) {
-     				extractFile(zip.getInputStream(entry), outFile);
-     				return outFile;
-		        }   
-		    }   
+		try (InputStream in = getInputStream(entry)) {
+			return new NestedJarModule(new File(getName()).getName() + "!/" + CLASSES_JAR, in);
 		}
-	    	
-		throw new IOException("Could not extract classes.jar");
-	}   
-
-	    
-    /** 
-     * Extracts a zip entry (file entry)
-     * @param zipIn
-     * @param outFile
-     * @throws IOException
-     */  
-    private static final int BUFFER_SIZE = 4096;
-    private void extractFile(InputStream in, File outFile) throws IOException {
-        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outFile));
-        byte[] bytesIn = new byte[BUFFER_SIZE];
-
-        int read = 0;
-        while ((read = in.read(bytesIn)) != -1) {
-            bos.write(bytesIn, 0, read);
-        }   
-
-        bos.close();
-    }   
-
+	}
 }
-
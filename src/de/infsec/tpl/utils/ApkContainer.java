@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+
+/**
+ * Single-open view on an apk file. The archive is opened and its central directory is read once on construction,
+ * all per-app consumers (manifest, dex, resource parsers) then share this instance instead of re-opening the file.
+ * The underlying file handle is released on {@link #close()}.
+ */
+public class ApkContainer implements Closeable {
+	public static final String MANIFEST_FILENAME = "AndroidManifest.xml";
+	public static final String ARSC_FILENAME = "resources.arsc";
+
+	// classes.dex, classes2.dex, ..., classesN.dex
+	private static final Pattern DEX_PATTERN = Pattern.compile("classes([2-9]|[1-9][0-9]+)?\\.dex");
+
+	private final File file;
+	private final ZipFile archive;
+	private final Map<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();  // in central directory order
+	private final List<ZipEntry> dexEntries;  // in load order
+
+
+	public ApkContainer(File apkFile) throws IOException {
+		if (!apkFile.exists())
+			throw new IOException("file '" + apkFile + "' does not exist!");
+
+		this.file = apkFile;
+		this.archive = new ZipFile(apkFile);
+
+		TreeMap<Integer, ZipEntry> idx2Dex = new TreeMap<Integer, ZipEntry>();
+		Enumeration<? extends ZipEntry> en = archive.entries();
+		while (en.hasMoreElements()) {
+			ZipEntry entry = en.nextElement();
+			entries.put(entry.getName(), entry);
+
+			Matcher m = DEX_PATTERN.matcher(entry.getName());
+			if (m.matches())
+				idx2Dex.put(m.group(1) == null? 1 : Integer.parseInt(m.group(1)), entry);
+		}
+
+		this.dexEntries = Collections.unmodifiableList(new ArrayList<ZipEntry>(idx2Dex.values()));
+	}
+
+
+	public File getFile() {
+		return file;
+	}
+
+	public Collection<ZipEntry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	/**
+	 * @return  the entry with the given name or null if not existing
+	 */
+	public ZipEntry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * @return  classes.dex, classes2.dex, .. in this order
+	 */
+	public List<ZipEntry> getDexEntries() {
+		return dexEntries;
+	}
+
+	public boolean isMultiDex() {
+		return dexEntries.size() > 1;
+	}
+
+	public ZipEntry getManifestEntry() {
+		return entries.get(MANIFEST_FILENAME);
+	}
+
+	public ZipEntry getArscEntry() {
+		return entries.get(ARSC_FILENAME);
+	}
+
+	/**
+	 * @return  all layout xml files (res/layout*)
+	 */
+	public List<ZipEntry> getLayoutEntries() {
+		List<ZipEntry> result = new ArrayList<ZipEntry>();
+		for (ZipEntry e: entries.values()) {
+			if (e.getName().startsWith("res/layout") && e.getName().endsWith(".xml"))
+				result.add(e);
+		}
+		return result;
+	}
+
+
+	public InputStream getInputStream(ZipEntry entry) throws IOException {
+		return archive.getInputStream(entry);
+	}
+
+	/**
+	 * @return  the uncompressed content of the entry
+	 */
+	public byte[] read(ZipEntry entry) throws IOException {
+		int size = entry.getSize() > 0 && entry.getSize() < Integer.MAX_VALUE? (int) entry.getSize() : 8192;
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(size);
+
+		try (InputStream is = archive.getInputStream(entry)) {
+			byte[] buf = new byte[8192];
+			int read;
+			while ((read = is.read(buf)) != -1)
+				bos.write(buf, 0, read);
+		}
+		return bos.toByteArray();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		archive.close();
+	}
+}
@@ -21,38 +21,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 public class ApkUtils {
+	/**
+	 * Prefer {@link ApkContainer#isMultiDex()} if the apk is accessed more than once
+	 */
 	public static boolean isMultiDexApk(File apkFile) throws ZipException, IOException {
-		ZipFile f = new ZipFile(apkFile);
-		boolean hasClasses2Dex = f.getEntry("classes2.dex") != null;
-		f.close();
-		return hasClasses2Dex;		
-	}
-	
-	
-	public static Set<ZipEntry> getClassesDex(File apkFile) throws ZipException, IOException {
-		HashSet<ZipEntry> result = new HashSet<ZipEntry>();
-		ZipFile f = new ZipFile(apkFile);
-		
-	    final Enumeration<? extends ZipEntry> entries = f.entries();
-	    while (entries.hasMoreElements()) {
-	        final ZipEntry entry = entries.nextElement();
-	        if (entry.getName().matches("classes[1-9]{0,1}\\.dex"))
-	        	result.add(entry);
-	    }
-	    
-	    // TODO: unzip those entries to tmp dir and return set<Files>
-
-	    f.close();
-	    return result;
+		try (ApkContainer apk = new ApkContainer(apkFile)) {
+			return apk.isMultiDex();
+		}
 	}
 	
 	
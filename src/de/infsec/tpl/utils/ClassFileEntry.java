@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+
+/**
+ * Class file entry of an in-memory {@link Module}, i.e. the class bytes are held in memory
+ * and can be read any number of times.
+ */
+class ClassFileEntry implements ModuleEntry {
+	private final Module container;
+	private final String name;
+	private final byte[] bytes;
+
+	ClassFileEntry(Module container, String name, byte[] bytes) {
+		this.container = container;
+		this.name = name;
+		this.bytes = bytes;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean isClassFile() {
+		return true;
+	}
+
+	@Override
+	public boolean isSourceFile() {
+		return false;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(bytes);
+	}
+
+	@Override
+	public boolean isModuleFile() {
+		return false;
+	}
+
+	@Override
+	public Module asModule() {
+		return null;
+	}
+
+	@Override
+	public String getClassName() {
+		return name.substring(0, name.length() - ".class".length());
+	}
+
+	@Override
+	public Module getContainer() {
+		return container;
+	}
+
+	@Override
+	public String toString() {
+		return "ClassEntry:" + name;
+	}
+}
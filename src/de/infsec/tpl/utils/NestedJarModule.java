@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+
+/**
+ * In-memory module of a jar that is nested in another archive (e.g. the classes.jar of an .aar).
+ * The nested jar is read in a single pass from the stream of its entry, i.e. it is neither
+ * extracted to disk nor buffered as a whole, only the class files are kept.
+ * Plain jars can be loaded the same way (see {@link #of(File)}), such that no file handle is kept open.
+ */
+public class NestedJarModule implements Module {
+	protected final String name;
+	private final List<ModuleEntry> entries;
+
+
+	/**
+	 * @param name  name of the module, e.g. &lt;archive&gt;!/classes.jar
+	 * @param jarStream  stream of the nested jar entry, not closed by this constructor
+	 * @throws IOException if the nested jar could not be read
+	 */
+	public NestedJarModule(String name, InputStream jarStream) throws IOException {
+		this.name = name;
+
+		List<ModuleEntry> entries = new ArrayList<ModuleEntry>();
+		JarInputStream jis = new JarInputStream(jarStream);
+		JarEntry je;
+		while ((je = jis.getNextJarEntry()) != null) {
+			if (je.isDirectory() || !je.getName().endsWith(".class")) continue;
+
+			// reads until the end of the current entry
+			entries.add(new ClassFileEntry(this, je.getName(), IOUtils.toByteArray(jis)));
+		}
+
+		this.entries = Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Reads the classes of a jar file into memory, the file is closed afterwards
+	 * @param jarFile  the jar file
+	 * @throws IOException if the jar could not be read
+	 */
+	public static NestedJarModule of(File jarFile) throws IOException {
+		try (InputStream in = new FileInputStream(jarFile)) {
+			return new NestedJarModule(jarFile.getName(), in);
+		}
+	}
+
+
+	@Override
+	public Iterator<ModuleEntry> getEntries() {
+		return entries.iterator();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "NestedJarModule:" + name;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015-2017  Erik Derr [derr@cs.uni-saarland.de]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this
+ * file except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under
+ * the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package de.infsec.tpl.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Process-wide, immutable in-memory copy of the class files of an SDK android.jar.
+ * The jar is read and inflated exactly once per JVM, every subsequent {@link com.ibm.wala.ipa.callgraph.AnalysisScope}
+ * adds the same module to its Primordial loader instead of re-opening and re-reading the jar file.
+ */
+public class PrimordialModule extends NestedJarModule {
+	private static final Logger logger = LoggerFactory.getLogger(de.infsec.tpl.utils.PrimordialModule.class);
+
+	// canonical path of android.jar -> cached module
+	private static final Map<String, PrimordialModule> cache = new ConcurrentHashMap<String, PrimordialModule>();
+
+
+	/**
+	 * Returns the shared module for the given android.jar, loading it on first access.
+	 * @param androidJar  path to the SDK android.jar
+	 * @return  the cached {@link PrimordialModule}
+	 * @throws IOException if the jar could not be read
+	 */
+	public static PrimordialModule get(File androidJar) throws IOException {
+		String key = androidJar.getCanonicalPath();
+		PrimordialModule module = cache.get(key);
+
+		if (module == null) {
+			synchronized (cache) {
+				module = cache.get(key);
+				if (module == null) {
+					module = load(androidJar);
+					cache.put(key, module);
+				}
+			}
+		}
+
+		return module;
+	}
+
+
+	private static PrimordialModule load(File androidJar) throws IOException {
+		long s = System.currentTimeMillis();
+
+		PrimordialModule module;
+		try (InputStream in = new FileInputStream(androidJar)) {
+			module = new PrimordialModule(androidJar.getName(), in);
+		}
+
+		logger.debug("Loaded " + module.size() + " primordial classes from " + androidJar + " (in " + Utils.millisecondsToFormattedTime(System.currentTimeMillis() - s) + ")");
+		return module;
+	}
+
+	private PrimordialModule(String name, InputStream jarStream) throws IOException {
+		super(name, jarStream);
+	}
+
+
+	@Override
+	public String toString() {
+		return "PrimordialModule:" + name;
+	}
+}
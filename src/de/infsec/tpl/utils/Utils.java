@@ -32,6 +32,7 @@ import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -51,6 +52,9 @@ public class Utils {
 	public static final String INDENT = "    ";
 	public static final String INDENT2 = INDENT + INDENT;
 	public static final String[] INDENTATION;
+
+	// MDC key of the per-app log file (see logback.xml)
+	public static final String LOG_CONTEXT_KEY = "appPath";
 	
 	static {
 		INDENTATION = new String[11];
@@ -510,6 +514,18 @@ public class Utils {
 
 
 
+	/**
+	 * Workers of parallel streams do not inherit the MDC of the calling thread, i.e. without the appPath their
+	 * log output would end up in the default log instead of the per-app log. To be called per task with the
+	 * appPath of the caller (see {@link MDC#get(String)}).
+	 */
+	public static void setLogContext(String appPath) {
+		if (appPath == null)
+			MDC.remove(LOG_CONTEXT_KEY);
+		else if (!appPath.equals(MDC.get(LOG_CONTEXT_KEY)))
+			MDC.put(LOG_CONTEXT_KEY, appPath);
+	}
+
 	public static String stacktrace2Str(Throwable t) {
 		StringWriter sw = new StringWriter();
 		t.printStackTrace(new PrintWriter(sw));
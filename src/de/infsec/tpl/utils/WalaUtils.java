@@ -14,6 +14,8 @@
 
 package de.infsec.tpl.utils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -24,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
@@ -63,6 +66,9 @@ public class WalaUtils {
 	public static final String WALA_FAKE_ROOT_METHOD_SIGNATURE = WALA_FAKE_ROOT_CLASS + ".fakeRootMethod()V";
 	public static final String WALA_FAKE_WORLD_CLINIT_SIGNATURE = WALA_FAKE_ROOT_CLASS + ".fakeWorldClinit()V";
 
+	// class loader implementation for dex input (as used by AndroidAnalysisScope)
+	public static final String DEX_CLASSLOADER_IMPL = "com.ibm.wala.dalvik.classLoader.WDexClassLoaderImpl";
+
 	// TIP:  use vm argument -Dwala.dump.ssa to dump Wala IR
 	
 	/*
@@ -193,6 +199,45 @@ public class WalaUtils {
 	}
 	
 
+	/**
+	 * Creates the analysis scope of a library code package. The library classes are read in-memory (for .aar
+	 * files from the nested classes.jar), i.e. there are neither tmp files nor open file handles once the
+	 * scope is released. The android.jar is added as shared {@link PrimordialModule}.
+	 * @param libraryFile  the library code package (.jar or .aar)
+	 * @param androidJar  path to the SDK android.jar
+	 * @return the {@link AnalysisScope} to build the library class hierarchy from
+	 * @throws IOException if the library or the android.jar could not be read
+	 */
+	public static AnalysisScope createLibraryScope(File libraryFile, File androidJar) throws IOException, ClassNotFoundException {
+		final AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+
+		if (libraryFile.getName().endsWith(".aar")) {
+			try (AarFile aar = new AarFile(libraryFile)) {
+				scope.addToScope(ClassLoaderReference.Application, aar.getClassesModule());
+			}
+		} else
+			scope.addToScope(ClassLoaderReference.Application, NestedJarModule.of(libraryFile));
+		scope.addToScope(ClassLoaderReference.Primordial, PrimordialModule.get(androidJar));
+
+		return scope;
+	}
+
+
+	/**
+	 * Class hierarchy lookups are not thread-safe in WALA, e.g. TypeReferences are interned in a plain map
+	 * and superclasses / method maps of classes are resolved lazily. Code that scans a class hierarchy in
+	 * parallel (hash tree generation, lib code usage) therefore synchronizes all lookups on the hierarchy.
+	 * @param cha  a {@link IClassHierarchy}
+	 * @param type  the type to look up
+	 * @return the {@link IClass} or null, if the type is not part of the class hierarchy
+	 */
+	public static IClass lookupClassSynchronized(IClassHierarchy cha, TypeReference type) {
+		synchronized (cha) {
+			return cha.lookupClass(type);
+		}
+	}
+
+
 	/**
 	 * Looks up an IClass for a given class name
 	 * @param cha  a {@link IClassHierarchy}
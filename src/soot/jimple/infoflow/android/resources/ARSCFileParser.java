@@ -10,14 +10,21 @@
  ******************************************************************************/
 package soot.jimple.infoflow.android.resources;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.zip.ZipEntry;
+
+import de.infsec.tpl.utils.ApkContainer;
 
 /**
  * Parser for reading out the contents of Android's resource.arsc file.
@@ -230,13 +237,62 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 */
 	public final static int FLAG_PUBLIC = 0x0002;
 
-	private final Map<Integer, String> stringTable = new HashMap<Integer, String>();
+	private StringPool stringTable;
 	private final List<ResPackage> packages = new ArrayList<ResPackage>();
 	
+	/**
+	 * A string pool in the resource file. Strings are decoded from the
+	 * underlying buffer on first access and cached afterwards.
+	 */
+	private class StringPool {
+		private final ByteBuffer data;
+		private final ResStringPool_Header header;
+		private final int blockStart;
+		private final int indexStart;
+		private final String[] strings;
+		
+		private StringPool(ByteBuffer data, ResStringPool_Header header, int blockStart, int indexStart) {
+			this.data = data;
+			this.header = header;
+			this.blockStart = blockStart;
+			this.indexStart = indexStart;
+			this.strings = new String[Math.max(header.stringCount, 0)];
+		}
+		
+		public int size() {
+			return this.strings.length;
+		}
+		
+		/**
+		 * Gets the string with the given index
+		 * @param idx The index of the string in the pool
+		 * @return The string with the given index or null if the index is
+		 * out of range
+		 */
+		public String get(int idx) {
+			if (idx < 0 || idx >= this.strings.length)
+				return null;
+			
+			String str = this.strings[idx];
+			if (str == null) {
+				// Offset begins at block start
+				int stringIdx = readUInt32(data, indexStart + idx * 4)
+						+ header.stringsStart + blockStart;
+				if (header.flagsUTF8)
+					str = readStringUTF8(data, stringIdx).trim();
+				else
+					str = readString(data, stringIdx).trim();
+				this.strings[idx] = str;
+			}
+			return str;
+		}
+	}
+	
 	public class ResPackage {
 		private int packageId;
 		private String packageName;
 		private List<ResType> types = new ArrayList<ResType>();
+		private StringPool keyStrings;
 		
 		public int getPackageId() {
 			return this.packageId;
@@ -260,12 +316,22 @@ public class ARSCFileParser extends AbstractResourceParser {
 		private int id;
 		private String typeName;
 		private List<ResConfig> configurations = new ArrayList<ResConfig>();
+		
+		private ResPackage resPackage;
+		private ByteBuffer data;
+		// start offsets of the type blocks not read yet, null once read
+		private List<Integer> typeChunks = new ArrayList<Integer>();
 
 		public String getTypeName() {
 			return this.typeName;
 		}
 		
-		public List<ResConfig> getConfigurations() {
+		public synchronized List<ResConfig> getConfigurations() {
+			if (this.typeChunks != null) {
+				List<Integer> chunks = this.typeChunks;
+				this.typeChunks = null;
+				readTypeChunks(this, chunks);
+			}
 			return this.configurations;
 		}
 		
@@ -277,7 +343,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 */
 		public Collection<AbstractResource> getAllResources() {
 			Map<String, AbstractResource> resources = new HashMap<String, AbstractResource>();
-			for (ResConfig rc : this.configurations)
+			for (ResConfig rc : getConfigurations())
 				for (AbstractResource res : rc.getResources())
 					if (!resources.containsKey(res.resourceName))
 						resources.put(res.resourceName, res);
@@ -292,7 +358,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * resource exists
 		 */
 		public AbstractResource getResourceByName(String resourceName) {
-			for (ResConfig rc : this.configurations)
+			for (ResConfig rc : getConfigurations())
 				for (AbstractResource res : rc.getResources())
 					if (res.getResourceName().equals(resourceName))
 						return res;
@@ -306,7 +372,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * null
 		 */
 		public AbstractResource getFirstResource(String resourceName) {
-			for (ResConfig rc : this.configurations)
+			for (ResConfig rc : getConfigurations())
 				for (AbstractResource res : rc.getResources())
 					if (res.resourceName.equals(resourceName))
 						return res;
@@ -320,7 +386,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * null
 		 */
 		public AbstractResource getFirstResource(int resourceID) {
-			for (ResConfig rc : this.configurations)
+			for (ResConfig rc : getConfigurations())
 				for (AbstractResource res : rc.getResources())
 					if (res.resourceID == resourceID)
 						return res;
@@ -948,82 +1014,75 @@ public class ARSCFileParser extends AbstractResourceParser {
 	}
 
 	public void parse(String apkFile) throws IOException {
-		this.handleAndroidResourceFiles(apkFile, null, new IResourceHandler() {
-			
-			@Override
-			public void handleResourceFile(String fileName, Set<String> fileNameFilter,
-					InputStream stream) {
-				try {
-					if (fileName.equals("resources.arsc"))
-						parse(stream);
-				}
-				catch (IOException ex) {
-					System.err.println("Could not read resource file: " + ex.getMessage());
-					ex.printStackTrace();
-				}
-			}
-			
-		});
+		try (ApkContainer apk = new ApkContainer(new File(apkFile))) {
+			parse(apk);
+		}
+	}
+	
+	/**
+	 * Parses the resources.arsc of an already opened apk (without iterating all entries)
+	 */
+	public void parse(ApkContainer apk) throws IOException {
+		ZipEntry entry = apk.getArscEntry();
+		if (entry == null)
+			return;
+
+		parse(ByteBuffer.wrap(apk.read(entry)));
 	}
 	
 	public void parse(InputStream stream) throws IOException {
-		readResourceHeader(stream);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int read;
+		while ((read = stream.read(buf)) != -1)
+			bos.write(buf, 0, read);
+		parse(ByteBuffer.wrap(bos.toByteArray()));
 	}
 
-	private void readResourceHeader(InputStream stream) throws IOException {
-		final int BLOCK_SIZE = 2048;
-		
+	/**
+	 * Parses a resource table from the given buffer (e.g. a wrapped array or a
+	 * mapped file), starting at its current position. The buffer is not copied
+	 * but retained, since string pools and type tables are decoded on demand.
+	 * @param buffer The buffer containing the resource table
+	 */
+	public void parse(ByteBuffer buffer) {
+		readResourceHeader(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	private void readResourceHeader(ByteBuffer data) {
 		ResTable_Header resourceHeader = new ResTable_Header();
-		readChunkHeader(stream, resourceHeader.header);
-		resourceHeader.packageCount = readUInt32(stream);
+		int offset = readChunkHeader(resourceHeader.header, data, 0);
+		resourceHeader.packageCount = readUInt32(data, offset);
 		if (DEBUG)
 			System.out.println("Package Groups (" + resourceHeader.packageCount + ")");
 		
 		// Do we have any packages to read?
-		int remainingSize = resourceHeader.header.size - resourceHeader.header.headerSize;
-		if (remainingSize <= 0)
+		int endOfTable = Math.min(resourceHeader.header.size, data.limit());
+		offset = resourceHeader.header.headerSize;
+		if (endOfTable - offset <= 0)
 			return;
 		
-		// Load the remaining data
-		byte[] remainingData = new byte[remainingSize];
-		int totalBytesRead = 0;
-		while (totalBytesRead < remainingSize) {
-			byte[] block = new byte[Math.min(BLOCK_SIZE, remainingSize - totalBytesRead)];
-			int bytesRead = stream.read(block);
-			if (bytesRead < 0) {
-				System.err.println("Could not read block from resource file");
-				return;
-			}
-			System.arraycopy(block, 0, remainingData, totalBytesRead, bytesRead);
-			totalBytesRead += bytesRead;
-		}
-		int offset = 0;
-		int beforeBlock = 0;
-		
 		// Read the next chunk
 		int packageCtr = 0;
-		Map<Integer, String> keyStrings = new HashMap<Integer, String>();
-		Map<Integer, String> typeStrings = new HashMap<Integer, String>();
-		while (offset < remainingData.length - 1) {
+		int beforeBlock = 0;
+		while (offset < endOfTable - 1) {
 			beforeBlock = offset;
 			ResChunk_Header nextChunkHeader = new ResChunk_Header();
-			offset = readChunkHeader(nextChunkHeader, remainingData, offset);
+			offset = readChunkHeader(nextChunkHeader, data, offset);
+			if (nextChunkHeader.size <= 0) {
+				System.err.println("Invalid chunk size in resource file");
+				return;
+			}
+
 			if (nextChunkHeader.type == RES_STRING_POOL_TYPE) {
-				// Read the string pool header
-				ResStringPool_Header stringPoolHeader = new ResStringPool_Header();
-				stringPoolHeader.header = nextChunkHeader;
-				offset = parseStringPoolHeader(stringPoolHeader, remainingData, offset);
-				
-				// Read the string data
-				offset = readStringTable(remainingData, offset, beforeBlock,
-						stringPoolHeader, this.stringTable);
-				assert this.stringTable.size() == stringPoolHeader.stringCount;
+				// Read the string pool header, the strings are decoded on first use
+				this.stringTable = readStringPool(data, beforeBlock);
 			}
 			else if (nextChunkHeader.type == RES_TABLE_PACKAGE_TYPE) {
 				// Read the package header
 				ResTable_Package packageTable = new ResTable_Package();
 				packageTable.header = nextChunkHeader;
-				offset = parsePackageTable(packageTable, remainingData, offset);
+				offset = parsePackageTable(packageTable, data, offset);
 				
 				if (DEBUG)
 					System.out.println("\tPackage " + packageCtr + " id=" + packageTable.id
@@ -1039,61 +1098,35 @@ public class ARSCFileParser extends AbstractResourceParser {
 				resPackage.packageId = packageTable.id;
 				resPackage.packageName = packageTable.name;
 				
-				{
-				// Find the type strings
-				int typeStringsOffset = beforeBlock + packageTable.typeStrings;
-				int beforeStringBlock = typeStringsOffset;
-				ResChunk_Header typePoolHeader = new ResChunk_Header();
-				typeStringsOffset = readChunkHeader(typePoolHeader, remainingData, typeStringsOffset);
-				if (typePoolHeader.type != RES_STRING_POOL_TYPE)
-					throw new RuntimeException("Unexpected block type for package type strings");
-				
-				ResStringPool_Header typePool = new ResStringPool_Header();
-				typePool.header = typePoolHeader;
-				typeStringsOffset = parseStringPoolHeader(typePool, remainingData, typeStringsOffset);
-				
-				// Attention: String offset starts at the beginning of the StringPool
-				// block, not the at the beginning of the Package block referring to it.
-				readStringTable(remainingData, typeStringsOffset, beforeStringBlock,
-						typePool, typeStrings);
-				
-				// Find the key strings
-				int keyStringsOffset = beforeBlock + packageTable.keyStrings;
-				beforeStringBlock = keyStringsOffset;
-				ResChunk_Header keyPoolHeader = new ResChunk_Header();
-				keyStringsOffset = readChunkHeader(keyPoolHeader, remainingData, keyStringsOffset);
-				if (keyPoolHeader.type != RES_STRING_POOL_TYPE)
-					throw new RuntimeException("Unexpected block type for package key strings");
-				
-				ResStringPool_Header keyPool = new ResStringPool_Header();
-				keyPool.header = keyPoolHeader;
-				keyStringsOffset = parseStringPoolHeader(keyPool, remainingData, keyStringsOffset);
-				
 				// Attention: String offset starts at the beginning of the StringPool
 				// block, not the at the beginning of the Package block referring to it.
-				readStringTable(remainingData, keyStringsOffset, beforeStringBlock,
-						keyPool, keyStrings);
+				StringPool typeStrings = readStringPool(data, beforeBlock + packageTable.typeStrings);
+				resPackage.keyStrings = readStringPool(data, beforeBlock + packageTable.keyStrings);
 
 				// Jump to the end of the string block
-				offset = beforeStringBlock + keyPoolHeader.size;
-				}
+				offset = beforeBlock + packageTable.keyStrings + resPackage.keyStrings.header.header.size;
 				
 				while (offset < endOfRecord) {
 					// Read the next inner block				
 					ResChunk_Header innerHeader = new ResChunk_Header();
 					int beforeInnerBlock = offset;
-					offset = readChunkHeader(innerHeader, remainingData, offset);
+					offset = readChunkHeader(innerHeader, data, offset);
+					if (innerHeader.size <= 0)
+						break;
+
 					if (innerHeader.type == RES_TABLE_TYPE_SPEC_TYPE) {
 						// Type specification block
 						ResTable_TypeSpec typeSpecTable = new ResTable_TypeSpec();
 						typeSpecTable.header = innerHeader;
-						offset = readTypeSpecTable(typeSpecTable, remainingData, offset);
+						offset = readTypeSpecTable(typeSpecTable, data, offset);
 						assert offset == beforeInnerBlock + typeSpecTable.header.headerSize;
 						
 						// Create the data object
 						ResType tp = new ResType();
 						tp.id = typeSpecTable.id;
 						tp.typeName = typeStrings.get(typeSpecTable.id - 1);
+						tp.resPackage = resPackage;
+						tp.data = data;
 						resPackage.types.add(tp);
 
 						// Normally, we also have a set of configurations following, but
@@ -1101,77 +1134,19 @@ public class ARSCFileParser extends AbstractResourceParser {
 					}
 					else if (innerHeader.type == RES_TABLE_TYPE_TYPE) {
 						// Type resource entries. The id field maps to the type
-						// for which we have a record. We create a mapping from
-						// type IDs to declare resources.
-						ResTable_Type typeTable = new ResTable_Type();
-						typeTable.header = innerHeader;
-						offset = readTypeTable(typeTable, remainingData, offset);
-						assert offset == beforeInnerBlock + typeTable.header.headerSize;
-						
-						// Create the data object
+						// for which we have a record. We only remember where the
+						// block starts, the entries are read when the type is
+						// first accessed.
+						int typeId = readUInt8(data, offset);
 						ResType resType = null;
 						for (ResType rt : resPackage.types)
-							if (rt.id == typeTable.id) {
+							if (rt.id == typeId) {
 								resType = rt;
 								break;
 							}
 						if (resType == null)
 							throw new RuntimeException("Reference to undeclared type found");
-						ResConfig config = new ResConfig();
-						resType.configurations.add(config);
-						
-						// Read the table entries
-						int resourceIdx = 0;
-						for (int i = 0; i < typeTable.entryCount; i++) {
-							int entryOffset = readUInt32(remainingData, offset);
-							offset += 4;
-							if (entryOffset == 0xFFFFFFFF)	// NoEntry
-								continue;
-							entryOffset += beforeInnerBlock + typeTable.entriesStart;
-							ResTable_Entry entry = readEntryTable(remainingData, entryOffset);
-							entryOffset += entry.size;
-							
-							AbstractResource res;
-							
-							// If this is a simple entry, the data structure is
-							// followed by RES_VALUE
-							if (entry.flagsComplex) {
-								ComplexResource cmpRes = new ComplexResource();
-								res = cmpRes;
-								
-								for (int j = 0; j < ((ResTable_Map_Entry) entry).count; j++) {
-									ResTable_Map map = new ResTable_Map();
-									entryOffset = readComplexValue(map, remainingData, entryOffset);
-									cmpRes.value.put(map.name + "", parseValue(map.value));
-								}
-							}
-							else {
-								Res_Value val = new Res_Value();
-								entryOffset = readValue(val, remainingData, entryOffset);
-								res = parseValue(val);
-								if (res == null) {
-									System.err.println("Could not parse resource " + keyStrings.get(entry.key)
-											+ " of type " + Integer.toHexString(val.dataType) + ", skipping entry");
-									continue;
-								}
-							}
-							
-							// Create the data object. For finding the correct ID, we
-							// must check whether the entry is really new - if so, it
-							// gets a new ID, otherwise, we reuse the old one
-							if (keyStrings.containsKey(entry.key))
-								res.resourceName = keyStrings.get(entry.key);
-							else
-								res.resourceName = "<INVALID RESOURCE>";
-							AbstractResource r = resType.getResourceByName(res.resourceName);
-							if (r != null)
-								res.resourceID = r.resourceID;
-							if (res.resourceID <= 0)
-								res.resourceID = (packageTable.id << 24)
-										+ (typeTable.id << 16) + resourceIdx;
-							config.resources.add(res);
-							resourceIdx++;
-						}
+						resType.typeChunks.add(beforeInnerBlock);
 					}
 					offset = beforeInnerBlock + innerHeader.size;
 				}
@@ -1180,9 +1155,9 @@ public class ARSCFileParser extends AbstractResourceParser {
 				for (ResType resType : resPackage.types) {
 					if (DEBUG) {
 						System.out.println("\t\tType " + resType.typeName + " " + (resType.id - 1) + ", configCount="
-							+ resType.configurations.size() + ", entryCount="
-							+ (resType.configurations.size() > 0 ? resType.configurations.get(0).resources.size() : 0));
-						for (ResConfig resConfig : resType.configurations) {
+							+ resType.getConfigurations().size() + ", entryCount="
+							+ (resType.getConfigurations().size() > 0 ? resType.getConfigurations().get(0).resources.size() : 0));
+						for (ResConfig resConfig : resType.getConfigurations()) {
 							System.out.println("\t\t\tconfig");
 							for (AbstractResource res : resConfig.resources)
 								System.out.println("\t\t\t\tresource " + Integer.toHexString(res.resourceID)
@@ -1195,7 +1170,86 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 			// Skip the block
 			offset = beforeBlock + nextChunkHeader.size;
-			remainingSize -= nextChunkHeader.size;
+		}
+	}
+
+	/**
+	 * Reads all configurations of the given type from the type blocks
+	 * that have been recorded while scanning the package.
+	 * @param resType The type for which to read the resource entries
+	 * @param typeChunks The start offsets of the type blocks
+	 */
+	private void readTypeChunks(ResType resType, List<Integer> typeChunks) {
+		ByteBuffer data = resType.data;
+		ResPackage resPackage = resType.resPackage;
+
+		// Resources of different configurations with the same name share an ID
+		Map<String, Integer> name2Id = new HashMap<String, Integer>();
+
+		for (int beforeInnerBlock : typeChunks) {
+			ResTable_Type typeTable = new ResTable_Type();
+			typeTable.header = new ResChunk_Header();
+			int offset = readChunkHeader(typeTable.header, data, beforeInnerBlock);
+			readTypeTable(typeTable, data, offset);
+
+			// The entry offsets directly follow the (variable-sized) header
+			offset = beforeInnerBlock + typeTable.header.headerSize;
+
+			ResConfig config = new ResConfig();
+			resType.configurations.add(config);
+			
+			// Read the table entries
+			int resourceIdx = 0;
+			for (int i = 0; i < typeTable.entryCount; i++) {
+				int entryOffset = readUInt32(data, offset);
+				offset += 4;
+				if (entryOffset == 0xFFFFFFFF)	// NoEntry
+					continue;
+				entryOffset += beforeInnerBlock + typeTable.entriesStart;
+				ResTable_Entry entry = readEntryTable(data, entryOffset);
+				entryOffset += entry.size;
+				
+				AbstractResource res;
+				
+				// If this is a simple entry, the data structure is
+				// followed by RES_VALUE
+				if (entry.flagsComplex) {
+					ComplexResource cmpRes = new ComplexResource();
+					res = cmpRes;
+					
+					for (int j = 0; j < ((ResTable_Map_Entry) entry).count; j++) {
+						ResTable_Map map = new ResTable_Map();
+						entryOffset = readComplexValue(map, data, entryOffset);
+						cmpRes.value.put(map.name + "", parseValue(map.value));
+					}
+				}
+				else {
+					Res_Value val = new Res_Value();
+					entryOffset = readValue(val, data, entryOffset);
+					res = parseValue(val);
+					if (res == null) {
+						System.err.println("Could not parse resource " + resPackage.keyStrings.get(entry.key)
+								+ " of type " + Integer.toHexString(val.dataType) + ", skipping entry");
+						continue;
+					}
+				}
+				
+				// Create the data object. For finding the correct ID, we
+				// must check whether the entry is really new - if so, it
+				// gets a new ID, otherwise, we reuse the old one
+				String keyString = resPackage.keyStrings.get(entry.key);
+				res.resourceName = keyString != null ? keyString : "<INVALID RESOURCE>";
+				Integer id = name2Id.get(res.resourceName);
+				if (id != null)
+					res.resourceID = id;
+				if (res.resourceID <= 0)
+					res.resourceID = (resPackage.packageId << 24)
+							+ (typeTable.id << 16) + resourceIdx;
+				if (id == null)
+					name2Id.put(res.resourceName, res.resourceID);
+				config.resources.add(res);
+				resourceIdx++;
+			}
 		}
 	}
 
@@ -1243,7 +1297,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 				res = new AttributeResource(val.data);
 				break;
 			case TYPE_STRING :
-				res = new StringResource(stringTable.get(val.data));
+				res = new StringResource(stringTable == null ? null : stringTable.get(val.data));
 				break;
 			case TYPE_INT_DEC:
 			case TYPE_INT_HEX:
@@ -1283,41 +1337,41 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readComplexValue
 			(ResTable_Map map,
-			byte[] remainingData,
-			int offset) throws IOException {
-		map.name = readUInt32(remainingData, offset);
+			ByteBuffer data,
+			int offset) {
+		map.name = readUInt32(data, offset);
 		offset += 4;
 		
-		return readValue(map.value, remainingData, offset);
+		return readValue(map.value, data, offset);
 	}
 
 	private int readValue
 			(Res_Value val,
-			byte[] remainingData,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		int initialOffset = offset;
 		
-		val.size = readUInt16(remainingData, offset);
+		val.size = readUInt16(data, offset);
 		offset += 2;
 		if (val.size > 8)	// This should always be 8. Check to not fail on broken resources in apps
 			return 0;
 		
-		val.res0 = readUInt8(remainingData, offset);
+		val.res0 = readUInt8(data, offset);
 		if (val.res0 != 0)
 			throw new RuntimeException("File format error, res0 was not zero");
 		offset += 1;
 
-		val.dataType = readUInt8(remainingData, offset);
+		val.dataType = readUInt8(data, offset);
 		offset += 1;
 
-		val.data = readUInt32(remainingData, offset);
+		val.data = readUInt32(data, offset);
 		offset += 4;
 		
 		assert offset == initialOffset + val.size;
 		return offset;
 	}
 
-	private ResTable_Entry readEntryTable(byte[] data, int offset) throws IOException {
+	private ResTable_Entry readEntryTable(ByteBuffer data, int offset) {
 		// The exact type of entry depends on the size
 		int size = readUInt16(data, offset);
 		offset += 2;
@@ -1351,8 +1405,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeTable
 			(ResTable_Type typeTable,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		typeTable.id = readUInt8(data, offset);
 		offset += 1;
 		
@@ -1377,8 +1431,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readConfigTable
 			(ResTable_Config config,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		config.size = readUInt32(data, offset);
 		offset += 4;
 		
@@ -1388,12 +1442,12 @@ public class ARSCFileParser extends AbstractResourceParser {
 		config.mnc = readUInt16(data, offset);
 		offset += 2;
 
-		config.language[0] = (char) data[offset];
-		config.language[1] = (char) data[offset + 1];
+		config.language[0] = (char) data.get(offset);
+		config.language[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
-		config.country[0] = (char) data[offset];
-		config.country[1] = (char) data[offset + 1];
+		config.country[0] = (char) data.get(offset);
+		config.country[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
 		config.orientation = readUInt8(data, offset);
@@ -1443,8 +1497,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeSpecTable
 			(ResTable_TypeSpec typeSpecTable,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		typeSpecTable.id = readUInt8(data, offset);
 		offset += 1;
 		
@@ -1464,43 +1518,41 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private int readStringTable
-			(byte[] remainingData,
-			int offset,
-			int blockStart,
-			ResStringPool_Header stringPoolHeader,
-			Map<Integer, String> stringList) throws IOException {
-		// Read the strings
-		for (int i = 0; i < stringPoolHeader.stringCount; i++) {
-			int stringIdx = readUInt32(remainingData, offset);
-			offset += 4;
-			
-			// Offset begins at block start
-			stringIdx += stringPoolHeader.stringsStart + blockStart;
-			String str = "";
-			if (stringPoolHeader.flagsUTF8)
-				str = readStringUTF8(remainingData, stringIdx).trim();
-			else
-				str = readString(remainingData, stringIdx).trim();
-			stringList.put(i, str);
-		}
-		return offset;
+	/**
+	 * Reads the header of the string pool block at the given offset. The
+	 * strings themselves are not decoded here, but on first access.
+	 * @param data The buffer containing the string pool
+	 * @param blockStart The offset at which the string pool block starts
+	 * @return The string pool
+	 */
+	private StringPool readStringPool(ByteBuffer data, int blockStart) {
+		ResStringPool_Header stringPoolHeader = new ResStringPool_Header();
+		stringPoolHeader.header = new ResChunk_Header();
+		int offset = readChunkHeader(stringPoolHeader.header, data, blockStart);
+		if (stringPoolHeader.header.type != RES_STRING_POOL_TYPE)
+			throw new RuntimeException("Unexpected block type for string pool");
+		offset = parseStringPoolHeader(stringPoolHeader, data, offset);
+
+		// The string offset array directly follows the header
+		return new StringPool(data, stringPoolHeader, blockStart, offset);
 	}
 
 	private int parsePackageTable
 			(ResTable_Package packageTable,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		packageTable.id = readUInt32(data, offset);
 		offset += 4;
 		
 		// Read the package name, zero-terminated string
 		StringBuilder bld = new StringBuilder();
 		for (int i = 0; i < 128; i++) {
-			int curChar = readUInt16(data, offset);
-			bld.append((char) curChar);
-			offset += 2;
+			char curChar = data.getChar(offset + i * 2);
+			if (curChar == 0)
+				break;
+			bld.append(curChar);
 		}
+		offset += 256;
 		packageTable.name = bld.toString().trim();
 		
 		packageTable.typeStrings = readUInt32(data, offset);
@@ -1518,30 +1570,47 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private String readString(byte[] remainingData, int stringIdx) throws IOException {
-		int strLen = readUInt16(remainingData, stringIdx);
+	private String readString(ByteBuffer data, int stringIdx) {
+		// The length is given in characters (one or two uint16 values)
+		int strLen = readUInt16(data, stringIdx);
+		stringIdx += 2;
+		if ((strLen & 0x8000) != 0) {
+			strLen = ((strLen & 0x7FFF) << 16) | readUInt16(data, stringIdx);
+			stringIdx += 2;
+		}
 		if (strLen == 0)
 			return "";
-		stringIdx += 2;
-		byte[] str = new byte[strLen * 2];
-		System.arraycopy(remainingData, stringIdx, str, 0, strLen * 2);
-		return new String(remainingData, stringIdx, strLen * 2, "UTF-16LE");
+
+		char[] str = new char[strLen];
+		for (int i = 0; i < strLen; i++)
+			str[i] = data.getChar(stringIdx + i * 2);
+		return new String(str);
 	}
 
-	private String readStringUTF8(byte[] remainingData, int stringIdx) throws IOException {
-		// skip the length, will usually be 0x1A1A
-		// int strLen = readUInt16(remainingData, stringIdx);
-		// the length here is somehow weird
-		int strLen = readUInt8(remainingData, stringIdx + 1);
-		stringIdx += 2;
-		String str = new String(remainingData, stringIdx, strLen, "UTF-8");
-		return str;
+	private String readStringUTF8(ByteBuffer data, int stringIdx) {
+		// Skip the length in characters, the length in bytes follows. Both
+		// are encoded in one or two bytes.
+		stringIdx += (readUInt8(data, stringIdx) & 0x80) != 0 ? 2 : 1;
+		int strLen = readUInt8(data, stringIdx);
+		stringIdx += 1;
+		if ((strLen & 0x80) != 0) {
+			strLen = ((strLen & 0x7F) << 8) | readUInt8(data, stringIdx);
+			stringIdx += 1;
+		}
+
+		if (data.hasArray())
+			return new String(data.array(), data.arrayOffset() + stringIdx, strLen, StandardCharsets.UTF_8);
+
+		ByteBuffer str = data.duplicate();
+		str.position(stringIdx);
+		str.limit(stringIdx + strLen);
+		return StandardCharsets.UTF_8.decode(str).toString();
 	}
 
 	private int parseStringPoolHeader
 			(ResStringPool_Header stringPoolHeader,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		stringPoolHeader.stringCount = readUInt32(data, offset);
 		stringPoolHeader.styleCount = readUInt32(data, offset + 4);
 		
@@ -1555,32 +1624,16 @@ public class ARSCFileParser extends AbstractResourceParser {
 	}
 
 	/**
-	 * Reads a chunk header from the input stream and stores the data in the
+	 * Reads a chunk header from the given buffer and stores the data in the
 	 * given object.
-	 * @param stream The stream from which to read the chunk header
 	 * @param nextChunkHeader The data object in which to put the chunk header
-	 * @throws IOException Thrown if an error occurs during read
-	 */
-	private void readChunkHeader
-			(InputStream stream,
-			ResChunk_Header nextChunkHeader) throws IOException {
-		byte[] header = new byte[8];
-		stream.read(header);
-		readChunkHeader(nextChunkHeader, header, 0);
-	}
-
-	/**
-	 * Reads a chunk header from the input stream and stores the data in the
-	 * given object.
-	 * @param nextChunkHeader The data object in which to put the chunk header
-	 * @param data The data array containing the structure
+	 * @param data The buffer containing the structure
 	 * @param offset The offset from which to start reading
-	 * @throws IOException Thrown if an error occurs during read
 	 */
 	private int readChunkHeader
 			(ResChunk_Header nextChunkHeader,
-			byte[] data,
-			int offset) throws IOException {
+			ByteBuffer data,
+			int offset) {
 		nextChunkHeader.type = readUInt16(data, offset);
 		offset += 2;
 		
@@ -1593,34 +1646,29 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private int readUInt8(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		return b0;
-	}
-
-	private int readUInt16(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		int b1 = uint16[1 + offset] & 0x000000FF;
-		return (b1 << 8) + b0;
+	private int readUInt8(ByteBuffer data, int offset) {
+		return data.get(offset) & 0xFF;
 	}
 
-	private int readUInt32(InputStream stream) throws IOException {
-		byte[] uint32 = new byte[4];
-		stream.read(uint32);
-		return readUInt32(uint32, 0);
+	private int readUInt16(ByteBuffer data, int offset) {
+		return data.getShort(offset) & 0xFFFF;
 	}
 
-	private int readUInt32(byte[] uint32, int offset) throws IOException {
-		int b0 = uint32[0 + offset] & 0x000000FF;
-		int b1 = uint32[1 + offset] & 0x000000FF;
-		int b2 = uint32[2 + offset] & 0x000000FF;
-		int b3 = uint32[3 + offset] & 0x000000FF;
-		return (Math.abs(b3) << 24) + (Math.abs(b2) << 16)
-				+ (Math.abs(b1) << 8) + Math.abs(b0);
+	private int readUInt32(ByteBuffer data, int offset) {
+		return data.getInt(offset);
 	}
 	
+	/**
+	 * Gets the global string pool. Note that this decodes all strings in the
+	 * pool, while the parser itself only decodes the referenced ones.
+	 * @return The global string pool, mapping string indices to strings
+	 */
 	public Map<Integer, String> getGlobalStringPool() {
-		return this.stringTable;
+		Map<Integer, String> result = new HashMap<Integer, String>();
+		if (this.stringTable != null)
+			for (int i = 0; i < this.stringTable.size(); i++)
+				result.put(i, this.stringTable.get(i));
+		return result;
 	}
 	
 	public List<ResPackage> getPackages() {
@@ -11,10 +11,12 @@
 package soot.jimple.infoflow.android.resources;
 
 import java.io.File;
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Set;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+
+import de.infsec.tpl.utils.ApkContainer;
 
 /**
  * Common base class for all resource parser classes
@@ -39,26 +41,36 @@ public abstract class AbstractResourceParser {
 		if (!apkF.exists())
 			throw new RuntimeException("file '" + apk + "' does not exist!");
 
+		try (ApkContainer archive = new ApkContainer(apkF)) {
+			handleAndroidResourceFiles(archive, fileNameFilter, handler);
+		}
+		catch (IOException e) {
+			System.err.println("Error when looking for XML resource files in apk "
+					+ apk + ": " + e);
+			e.printStackTrace();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Provides the given handler with a stream for every file of an already opened apk
+	 * @param apk The opened apk file
+	 * @param fileNameFilter If this parameter is non-null, only files with a
+	 * name (excluding extension) in this set will be analyzed.
+	 * @param handler The handler for processing the apk file
+	 */
+	protected void handleAndroidResourceFiles(ApkContainer apk, Set<String> fileNameFilter,
+			IResourceHandler handler) {
 		try {
-			ZipFile archive = null;
-			try {
-				archive = new ZipFile(apkF);
-				Enumeration<?> entries = archive.entries();
-				while (entries.hasMoreElements()) {
-					ZipEntry entry = (ZipEntry) entries.nextElement();
-					String entryName = entry.getName();
-					
-					handler.handleResourceFile(entryName, fileNameFilter, archive.getInputStream(entry));
+			for (ZipEntry entry: apk.getEntries()) {
+				try (InputStream is = apk.getInputStream(entry)) {
+					handler.handleResourceFile(entry.getName(), fileNameFilter, is);
 				}
 			}
-			finally {
-				if (archive != null)
-					archive.close();
-			}
 		}
 		catch (Exception e) {
 			System.err.println("Error when looking for XML resource files in apk "
-					+ apk + ": " + e);
+					+ apk.getFile() + ": " + e);
 			e.printStackTrace();
 			if (e instanceof RuntimeException)
 				throw (RuntimeException) e;